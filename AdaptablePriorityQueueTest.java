@@ -0,0 +1,258 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * The test cases every adaptable priority queue over the keys 1..99 has to
+ * pass, whatever structure it keeps its entries in. A test class for one heap
+ * extends this class, returns a new, empty heap from newHeap() and adds the
+ * cases specific to that heap. Each test case asks for its own heaps, so the
+ * cases stay independent of each other.
+ */
+public abstract class AdaptablePriorityQueueTest {
+
+	/**
+	 * @return a new, empty heap of the kind under test
+	 */
+	protected abstract AdaptablePriorityQueue<Integer, String> newHeap();
+
+	/**
+	 * A simple test to ensure that insert() works.
+	 */
+	@Test
+	public void testInsertOneElement() {
+		// set-up
+		AdaptablePriorityQueue<Integer, String> heap = newHeap();
+		heap.insert(1, "A");
+
+		// Assert that your data structure is consistent using
+		// assertThat(actual, is(expected))
+		assertThat(heap.size(), is(1));
+		assertThat(heap.min().getKey(), is(1));
+	}
+
+	/**
+	 * This is an example to check that the order of the heap is sorted as per
+	 * the keys by comparing a list of the actual and expected keys.
+	 */
+	@Test
+	public void testRemoveMinHeapOrderUsingList() {
+		AdaptablePriorityQueue<Integer, String> heap = newHeap();
+		heap.insert(11, "A");
+		heap.insert(13, "B");
+		heap.insert(64, "C");
+		heap.insert(16, "D");
+		heap.insert(44, "E");
+
+		// the expected ordering that keys come in
+		List<Integer> expectedKeys = Arrays.asList(11, 13, 16, 44, 64);
+
+		// the actual ordering of keys in the heap
+		List<Integer> actualKeys = new ArrayList<Integer>();
+		while (!heap.isEmpty()) {
+			actualKeys.add(heap.removeMin().getKey());
+		}
+
+		// check that the actual ordering matches the expected ordering by using
+		// one assert. Note that assertThat(actual, is(expected)), when used on
+		// lists/arrays, also checks that the ordering is the same.
+		assertThat(actualKeys, is(expectedKeys));
+	}
+
+	/**
+	 * This is an example of testing heap ordering by ensuring that the min key
+	 * is always at the root by checking it explicitly each time, using multiple
+	 * asserts rather than a list.
+	 */
+	@Test
+	public void testRemoveMinHeapOrder() {
+		AdaptablePriorityQueue<Integer, String> heap = newHeap();
+		heap.insert(11, "A");
+		heap.insert(13, "B");
+		heap.insert(64, "C");
+		heap.insert(16, "D");
+		heap.insert(44, "E");
+
+		// test the heap ordering by asserting on all elements
+		assertThat(heap.removeMin().getKey(), is(11));
+		assertThat(heap.removeMin().getKey(), is(13));
+		assertThat(heap.removeMin().getKey(), is(16));
+		assertThat(heap.removeMin().getKey(), is(44));
+		assertThat(heap.removeMin().getKey(), is(64));
+	}
+
+	@Test()
+	public void testInsert() {
+		AdaptablePriorityQueue<Integer, String> heap = newHeap();
+
+		Entry<Integer, String> entry1 = heap.insert(11, "A");
+		Entry<Integer, String> entry2 = heap.insert(13, "B");
+		Entry<Integer, String> entry3 = heap.insert(64, "C");
+		Entry<Integer, String> entry4 = heap.insert(16, "D");
+		Entry<Integer, String> entry5 = heap.insert(44, "E");
+
+		assertEquals(11, (int) entry1.getKey());
+		assertEquals(13, (int) entry2.getKey());
+		assertEquals(64, (int) entry3.getKey());
+		assertEquals(16, (int) entry4.getKey());
+		assertEquals(44, (int) entry5.getKey());
+
+		assertEquals("A", entry1.getValue());
+		assertEquals("B", entry2.getValue());
+		assertEquals("C", entry3.getValue());
+		assertEquals("D", entry4.getValue());
+		assertEquals("E", entry5.getValue());
+	}
+
+	@Test(expected = InvalidKeyException.class)
+	public void testInsertThrowsInvalidKeyException() {
+		AdaptablePriorityQueue<Integer, String> heap = newHeap();
+		heap.insert(0, "A");
+	}
+
+	@Test(expected = InvalidKeyException.class)
+	public void testInsertAboveRangeThrowsInvalidKeyException() {
+		AdaptablePriorityQueue<Integer, String> heap = newHeap();
+		heap.insert(100, "A");
+	}
+
+	@Test(expected = EmptyPriorityQueueException.class)
+	public void testMinThrowsEmptyPriorityQueueException() {
+		AdaptablePriorityQueue<Integer, String> heap = newHeap();
+		heap.min();
+	}
+
+	@Test()
+	public void testsize() {
+		AdaptablePriorityQueue<Integer, String> heap = newHeap();
+		assertEquals(0, heap.size());
+		Entry<Integer, String> entry = heap.insert(1, "A");
+		assertEquals(1, heap.size());
+		heap.remove(entry);
+		assertEquals(0, heap.size());
+	}
+
+	@Test()
+	public void testisEmpty() {
+		AdaptablePriorityQueue<Integer, String> heap = newHeap();
+		assertTrue(heap.isEmpty());
+		Entry<Integer, String> entry = heap.insert(1, "A");
+		assertFalse(heap.isEmpty());
+		heap.remove(entry);
+		assertTrue(heap.isEmpty());
+	}
+
+	@Test()
+	public void testReplaceValue() {
+		AdaptablePriorityQueue<Integer, String> heap = newHeap();
+		Entry<Integer, String> entry1 = heap.insert(11, "A");
+		heap.insert(13, "B");
+		heap.insert(64, "C");
+
+		assertEquals("A", heap.replaceValue(entry1, "Z"));
+		assertEquals("Z", entry1.getValue());
+		heap.replaceValue(entry1, "Y");
+		assertEquals("Y", entry1.getValue());
+	}
+
+	@Test()
+	public void testReplaceKey() {
+		AdaptablePriorityQueue<Integer, String> heap = newHeap();
+		Entry<Integer, String> entry1 = heap.insert(11, "A");
+		Entry<Integer, String> entry2 = heap.insert(13, "B");
+		heap.insert(64, "C");
+		heap.insert(16, "D");
+		heap.insert(44, "E");
+
+		assertEquals(11, (int) heap.replaceKey(entry1, 10));
+		assertEquals(10, (int) entry1.getKey());
+		heap.replaceKey(entry1, 14);
+		// the handle keeps referring to the same item after it sifts down
+		assertEquals(14, (int) entry1.getKey());
+		assertEquals("A", entry1.getValue());
+		assertEquals(entry2, heap.min());
+	}
+
+	/*
+	 * Entries handed out by insert() keep their key and value while other
+	 * entries sift past them, so they can be removed directly later on.
+	 */
+	@Test()
+	public void testHandlesStayValidAfterSifting() {
+		AdaptablePriorityQueue<Integer, String> heap = newHeap();
+		Entry<Integer, String> entry1 = heap.insert(50, "A");
+		Entry<Integer, String> entry2 = heap.insert(40, "B");
+		Entry<Integer, String> entry3 = heap.insert(30, "C");
+		Entry<Integer, String> entry4 = heap.insert(20, "D");
+
+		assertEquals(50, (int) entry1.getKey());
+		assertEquals("A", entry1.getValue());
+
+		assertEquals(entry2, heap.remove(entry2));
+		assertEquals(entry4, heap.removeMin());
+		assertEquals(entry3, heap.removeMin());
+		assertEquals(entry1, heap.removeMin());
+		assertTrue(heap.isEmpty());
+	}
+
+	@Test(expected = InvalidEntryException.class)
+	public void testRemoveTwiceThrowsInvalidEntryException() {
+		AdaptablePriorityQueue<Integer, String> heap = newHeap();
+		Entry<Integer, String> entry = heap.insert(5, "A");
+		heap.insert(6, "B");
+		heap.remove(entry);
+		heap.remove(entry);
+	}
+
+	@Test(expected = InvalidEntryException.class)
+	public void testEntryOfOtherHeapThrowsInvalidEntryException() {
+		AdaptablePriorityQueue<Integer, String> heap = newHeap();
+		AdaptablePriorityQueue<Integer, String> other = newHeap();
+		heap.insert(5, "A");
+		heap.remove(other.insert(5, "A"));
+	}
+
+	/*
+	 * Runs a random mix of operations and checks every removal against the
+	 * keys that should be in the heap.
+	 */
+	@Test
+	public void testRandomOperationsKeepHeapOrder() {
+		Random random = new Random(16);
+		AdaptablePriorityQueue<Integer, String> heap = newHeap();
+		List<Entry<Integer, String>> live = new ArrayList<Entry<Integer, String>>();
+		for (int i = 0; i < 5000; i++) {
+			int op = random.nextInt(4);
+			if (op == 0 || live.isEmpty()) {
+				live.add(heap.insert(1 + random.nextInt(99), "v" + i));
+			} else if (op == 1) {
+				heap.replaceKey(live.get(random.nextInt(live.size())), 1 + random.nextInt(99));
+			} else if (op == 2) {
+				assertTrue(live.remove(heap.remove(live.get(random.nextInt(live.size())))));
+			} else {
+				int min = 100;
+				for (Entry<Integer, String> entry : live) {
+					min = Math.min(min, entry.getKey());
+				}
+				Entry<Integer, String> removed = heap.removeMin();
+				assertEquals(min, (int) removed.getKey());
+				assertTrue(live.remove(removed));
+			}
+			assertEquals(live.size(), heap.size());
+		}
+	}
+}
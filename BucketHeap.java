@@ -0,0 +1,268 @@
+package heap;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * An adaptable priority queue for the bounded key range 1..99 implemented as a
+ * bucket queue. There is one doubly linked list of entries per key, and a 128
+ * bit occupancy bitmap records which lists are non-empty. Since the key space
+ * is tiny and fixed, nothing ever has to be sorted:
+ *
+ * insert(), replaceKey(), replaceValue() and remove() run in O(1) time, they
+ * only unlink or link an entry. min() and removeMin() find the lowest set bit
+ * of the bitmap, which is O(1) time as well.
+ *
+ * Entries with equal keys come out in the order they were inserted (or last
+ * had their key replaced). It accepts the same keys and throws the same
+ * exceptions as MyHeap, so it can be used in place of a MyHeap<Integer, V>
+ * by changing only the constructor call.
+ */
+
+public class BucketHeap<V> implements AdaptablePriorityQueue<Integer, V> {
+
+	private static final int MIN_KEY = 1;
+	private static final int MAX_KEY = 99;
+
+	// first and last entry of the list for every key
+	private BucketEntry<V>[] _heads;
+	private BucketEntry<V>[] _tails;
+	// bit k of the bitmap is set when the list for key k is non-empty
+	private long _lowBits;
+	private long _highBits;
+	private int _size;
+
+	/**
+	 * Creates an empty heap.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public BucketHeap() {
+		_heads = (BucketEntry<V>[]) new BucketEntry[MAX_KEY + 1];
+		_tails = (BucketEntry<V>[]) new BucketEntry[MAX_KEY + 1];
+		_size = 0;
+	}
+
+	/**
+	 * Returns the size of the heap. This method runs in O(1) time.
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Returns whether the heap is empty. This method runs in O(1) time.
+	 */
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * Returns but does not remove an entry with minimum key. This method runs
+	 * in O(1) time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the heap is empty
+	 */
+	public Entry<Integer, V> min() throws EmptyPriorityQueueException {
+		if (isEmpty()) {
+			throw new EmptyPriorityQueueException("heap is empty");
+		}
+		return _heads[lowestKey()];
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the entry created. This method runs
+	 * in O(1) time.
+	 *
+	 * @throws InvalidKeyException
+	 *             if the key is null or not in 1..99
+	 */
+	public Entry<Integer, V> insert(Integer key, V value) throws InvalidKeyException {
+		checkKey(key);
+		BucketEntry<V> entry = new BucketEntry<V>(key, value);
+		link(entry);
+		_size++;
+		return entry;
+	}
+
+	/**
+	 * Removes and returns an entry with minimum key. This method runs in O(1)
+	 * time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the heap is empty
+	 */
+	public Entry<Integer, V> removeMin() throws EmptyPriorityQueueException {
+		return remove(min());
+	}
+
+	/**
+	 * Removes and returns the given entry from the heap. This method runs in
+	 * O(1) time.
+	 *
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this heap
+	 */
+	public Entry<Integer, V> remove(Entry<Integer, V> entry) throws InvalidEntryException {
+		BucketEntry<V> checkedEntry = checkAndConvertEntry(entry);
+		unlink(checkedEntry);
+		checkedEntry._owner = null;
+		_size--;
+		return checkedEntry;
+	}
+
+	/**
+	 * Replaces the key of the given entry, moving it to the back of the list
+	 * for its new key. This method runs in O(1) time.
+	 *
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this heap
+	 * @throws InvalidKeyException
+	 *             if the key is null or not in 1..99
+	 */
+	public Integer replaceKey(Entry<Integer, V> entry, Integer key)
+			throws InvalidEntryException, InvalidKeyException {
+		BucketEntry<V> checkedEntry = checkAndConvertEntry(entry);
+		checkKey(key);
+
+		int oldKey = checkedEntry._key;
+		unlink(checkedEntry);
+		checkedEntry._key = key;
+		link(checkedEntry);
+		return oldKey;
+	}
+
+	/**
+	 * Replaces the value of the given entry. This method runs in O(1) time.
+	 *
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this heap
+	 */
+	public V replaceValue(Entry<Integer, V> entry, V value) throws InvalidEntryException {
+		BucketEntry<V> checkedEntry = checkAndConvertEntry(entry);
+		V oldValue = checkedEntry._value;
+		checkedEntry._value = value;
+		return oldValue;
+	}
+
+	/**
+	 * Determines whether a given entry is currently stored in this heap and
+	 * converts it to a BucketEntry.
+	 *
+	 * @throws InvalidEntryException
+	 *             if the entry is not of the proper class or not in this heap
+	 */
+	@SuppressWarnings("unchecked")
+	private BucketEntry<V> checkAndConvertEntry(Entry<Integer, V> entry) throws InvalidEntryException {
+		if (!(entry instanceof BucketEntry) || ((BucketEntry<V>) entry)._owner != this) {
+			throw new InvalidEntryException("Invalid entry");
+		}
+		return (BucketEntry<V>) entry;
+	}
+
+	private static void checkKey(Integer key) throws InvalidKeyException {
+		if (key == null || key < MIN_KEY || key > MAX_KEY) {
+			throw new InvalidKeyException("key out of appropriate range");
+		}
+	}
+
+	/**
+	 * Returns the smallest key whose list is non-empty. The heap must not be
+	 * empty.
+	 */
+	private int lowestKey() {
+		if (_lowBits != 0) {
+			return Long.numberOfTrailingZeros(_lowBits);
+		}
+		return 64 + Long.numberOfTrailingZeros(_highBits);
+	}
+
+	/**
+	 * Appends the entry to the list for its key and marks the list occupied.
+	 */
+	private void link(BucketEntry<V> entry) {
+		int key = entry._key;
+		BucketEntry<V> tail = _tails[key];
+		entry._owner = this;
+		entry._prev = tail;
+		entry._next = null;
+		if (tail == null) {
+			_heads[key] = entry;
+			setBit(key);
+		} else {
+			tail._next = entry;
+		}
+		_tails[key] = entry;
+	}
+
+	/**
+	 * Cuts the entry out of the list for its key and clears the occupancy bit
+	 * if the list became empty.
+	 */
+	private void unlink(BucketEntry<V> entry) {
+		int key = entry._key;
+		if (entry._prev == null) {
+			_heads[key] = entry._next;
+		} else {
+			entry._prev._next = entry._next;
+		}
+		if (entry._next == null) {
+			_tails[key] = entry._prev;
+		} else {
+			entry._next._prev = entry._prev;
+		}
+		entry._prev = null;
+		entry._next = null;
+		if (_heads[key] == null) {
+			clearBit(key);
+		}
+	}
+
+	private void setBit(int key) {
+		if (key < 64) {
+			_lowBits |= 1L << key;
+		} else {
+			_highBits |= 1L << (key - 64);
+		}
+	}
+
+	private void clearBit(int key) {
+		if (key < 64) {
+			_lowBits &= ~(1L << key);
+		} else {
+			_highBits &= ~(1L << (key - 64));
+		}
+	}
+
+	/*
+	 * The entry handed out by this heap, which doubles as the node of the
+	 * intrusive list for its key.
+	 */
+	private static class BucketEntry<V> implements Entry<Integer, V> {
+
+		private int _key;
+		private V _value;
+		private BucketEntry<V> _prev;
+		private BucketEntry<V> _next;
+		// the heap holding this entry, null once removed
+		private BucketHeap<V> _owner;
+
+		private BucketEntry(int key, V value) {
+			_key = key;
+			_value = value;
+		}
+
+		public Integer getKey() {
+			return _key;
+		}
+
+		public V getValue() {
+			return _value;
+		}
+	}
+}
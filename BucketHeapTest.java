@@ -0,0 +1,64 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.Entry;
+
+/**
+ * Runs the AdaptablePriorityQueueTest cases against BucketHeap, plus a few
+ * checks specific to the bucket queue.
+ */
+public class BucketHeapTest extends AdaptablePriorityQueueTest {
+
+	@Override
+	protected AdaptablePriorityQueue<Integer, String> newHeap() {
+		return new BucketHeap<String>();
+	}
+
+	/*
+	 * a new key moves the entry out of its bucket and behind the entries
+	 * already in the new one
+	 */
+	@Test()
+	public void testReplaceKeyMovesEntryBetweenBuckets() {
+		BucketHeap<String> heap = new BucketHeap<String>();
+		Entry<Integer, String> entry1 = heap.insert(11, "A");
+		heap.insert(13, "B");
+		heap.insert(80, "C");
+
+		assertEquals(11, (int) heap.replaceKey(entry1, 80));
+		assertEquals(80, (int) entry1.getKey());
+		assertThat(heap.removeMin().getKey(), is(13));
+		assertThat(heap.removeMin().getValue(), is("C"));
+		assertThat(heap.removeMin().getValue(), is("A"));
+	}
+
+	/*
+	 * keys on both halves of the bitmap, with equal keys leaving in insertion
+	 * order
+	 */
+	@Test()
+	public void testEqualKeysAcrossBitmapWords() {
+		BucketHeap<String> heap = new BucketHeap<String>();
+		heap.insert(70, "A");
+		heap.insert(63, "B");
+		heap.insert(70, "C");
+		heap.insert(64, "D");
+		heap.insert(63, "E");
+
+		List<String> values = new ArrayList<String>();
+		while (!heap.isEmpty()) {
+			values.add(heap.removeMin().getValue());
+		}
+		assertThat(values, is(Arrays.asList("B", "E", "D", "A", "C")));
+	}
+
+}
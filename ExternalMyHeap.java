@@ -0,0 +1,315 @@
+package heap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidKeyException;
+import net.datastructures.PriorityQueue;
+
+/**
+ * A priority queue that can hold more entries than fit in memory. New entries
+ * go into an in-memory MyHeap; once that holds the configured number of
+ * entries, they are removed in key order and written out as a sorted "run" to
+ * a file in a spill directory. Runs are read back through memory-mapped
+ * buffers, so both spilling and reading are sequential I/O.
+ *
+ * removeMin() merges the in-memory heap with the heads of all runs: the run
+ * heads are kept in a second MyHeap keyed by each run's current key, and
+ * taking from a run advances it and replaces its key in place (a single sort
+ * instead of a remove and an insert).
+ *
+ * Keys and values are written with the given HeapSerializers. Each record of a
+ * run is the int length of the key and value bytes followed by the key and
+ * then the value. A run file is deleted once it has been read to the end, and
+ * close() deletes any that remain.
+ *
+ * Keys follow the same rules as MyHeap. The entries returned by insert() are
+ * only meaningful until the next spill, which is why this is a plain
+ * PriorityQueue rather than an adaptable one. An I/O failure while spilling
+ * or reading a run is reported as an UncheckedIOException.
+ */
+
+public class ExternalMyHeap<K, V> implements PriorityQueue<K, V>, Closeable {
+
+	private MyHeap<K, V> _memory;
+	private final MyHeap<K, Run<K, V>> _runs;
+	private final Comparator<K> _comparator;
+	private final HeapSerializer<K> _keySerializer;
+	private final HeapSerializer<V> _valueSerializer;
+	private final int _threshold;
+	private final Path _directory;
+	private int _size;
+
+	/**
+	 * Creates an empty queue.
+	 *
+	 * @param comparator
+	 *            the comparator to be used for heap keys
+	 * @param keySerializer
+	 *            writes and reads the keys of spilled entries
+	 * @param valueSerializer
+	 *            writes and reads the values of spilled entries
+	 * @param threshold
+	 *            the number of entries held in memory before they are spilled
+	 * @param directory
+	 *            an existing directory to write run files to
+	 * @throws IllegalArgumentException
+	 *             if threshold is not positive or directory is not a directory
+	 */
+	public ExternalMyHeap(Comparator<K> comparator, HeapSerializer<K> keySerializer,
+			HeapSerializer<V> valueSerializer, int threshold, Path directory) throws IllegalArgumentException {
+		if (threshold < 1) {
+			throw new IllegalArgumentException("threshold must be positive");
+		}
+		if (directory == null || !Files.isDirectory(directory)) {
+			throw new IllegalArgumentException("not a directory: " + directory);
+		}
+		_memory = new MyHeap<K, V>(comparator);
+		_runs = new MyHeap<K, Run<K, V>>(comparator);
+		_comparator = comparator;
+		_keySerializer = keySerializer;
+		_valueSerializer = valueSerializer;
+		_threshold = threshold;
+		_directory = directory;
+	}
+
+	/**
+	 * @return the number of entries, in memory and on disk
+	 */
+	public int size() {
+		return _size;
+	}
+
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * @return the number of runs currently on disk
+	 */
+	public int runCount() {
+		return _runs.size();
+	}
+
+	/**
+	 * Inserts a key-value pair, spilling the in-memory entries to a new run
+	 * if this fills the in-memory heap. This method runs in O(log n) time,
+	 * plus the cost of the spill when one happens.
+	 *
+	 * @throws InvalidKeyException
+	 *             if the key is not suitable for this heap
+	 */
+	public Entry<K, V> insert(K key, V value) throws InvalidKeyException {
+		Entry<K, V> entry = _memory.insert(key, value);
+		_size++;
+		if (_memory.size() >= _threshold) {
+			spill();
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns but does not remove an entry with minimum key, which is either
+	 * in memory or the head of a run.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the queue is empty
+	 */
+	public Entry<K, V> min() throws EmptyPriorityQueueException {
+		if (isEmpty()) {
+			throw new EmptyPriorityQueueException("heap is empty");
+		}
+		if (memoryFirst()) {
+			return _memory.min();
+		}
+		return _runs.min().getValue()._head;
+	}
+
+	/**
+	 * Removes and returns an entry with minimum key. This method runs in
+	 * O(log n + log r) time for r runs.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the queue is empty
+	 */
+	public Entry<K, V> removeMin() throws EmptyPriorityQueueException {
+		if (isEmpty()) {
+			throw new EmptyPriorityQueueException("heap is empty");
+		}
+		if (memoryFirst()) {
+			_size--;
+			return _memory.removeMin();
+		}
+
+		Entry<K, Run<K, V>> runEntry = _runs.min();
+		Run<K, V> run = runEntry.getValue();
+		Entry<K, V> head = run._head;
+		if (run.advance()) {
+			_runs.replaceKey(runEntry, run._head.getKey());
+		} else {
+			_runs.removeMin();
+			run.delete();
+		}
+		_size--;
+		return head;
+	}
+
+	/**
+	 * Deletes every remaining run file. The queue is empty afterwards.
+	 */
+	public void close() throws IOException {
+		IOException failure = null;
+		while (!_runs.isEmpty()) {
+			try {
+				_runs.removeMin().getValue().delete();
+			} catch (UncheckedIOException e) {
+				failure = e.getCause();
+			}
+		}
+		_memory = new MyHeap<K, V>(_comparator);
+		_size = 0;
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * @return whether the next entry in key order is in memory rather than at
+	 *         the head of a run
+	 */
+	private boolean memoryFirst() {
+		if (_runs.isEmpty()) {
+			return true;
+		}
+		if (_memory.isEmpty()) {
+			return false;
+		}
+		return _comparator.compare(_memory.min().getKey(), _runs.min().getKey()) <= 0;
+	}
+
+	/**
+	 * Writes every in-memory entry, in key order, to a new run file and adds
+	 * the run to the merge. The entries are copied out of the tree in a single
+	 * walk and sorted, and the in-memory heap is only replaced by an empty one
+	 * once the run is part of the merge, so a spill that fails loses nothing;
+	 * its partly written file is deleted.
+	 */
+	private void spill() {
+		List<Entry<K, V>> sorted = new ArrayList<Entry<K, V>>(_memory.size());
+		_memory.spliterator().forEachRemaining(sorted::add);
+		sorted.sort((a, b) -> _comparator.compare(a.getKey(), b.getKey()));
+		Path file = null;
+		try {
+			file = Files.createTempFile(_directory, "heap-run-", ".bin");
+			writeRun(file, sorted, _keySerializer, _valueSerializer);
+			Run<K, V> run = new Run<K, V>(file, sorted.size(), _keySerializer, _valueSerializer);
+			run.advance();
+			_runs.insert(run._head.getKey(), run);
+		} catch (IOException e) {
+			discard(file, e);
+			throw new UncheckedIOException(e);
+		} catch (RuntimeException e) {
+			discard(file, e);
+			throw e;
+		}
+		_memory = new MyHeap<K, V>(_comparator);
+	}
+
+	/**
+	 * Deletes the file of a spill that failed, if it was created, adding a
+	 * failure to delete it to the spill's failure.
+	 */
+	private static void discard(Path file, Exception failure) {
+		if (file == null) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			failure.addSuppressed(e);
+		}
+	}
+
+	/**
+	 * Writes the entries to the file as a run of length-prefixed records,
+	 * through a memory-mapped buffer.
+	 */
+	static <K, V> void writeRun(Path file, List<? extends Entry<K, V>> entries, HeapSerializer<K> keySerializer,
+			HeapSerializer<V> valueSerializer) throws IOException {
+		long total = 0;
+		for (Entry<K, V> entry : entries) {
+			total += 4 + keySerializer.size(entry.getKey()) + valueSerializer.size(entry.getValue());
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, total);
+			for (Entry<K, V> entry : entries) {
+				buffer.putInt(keySerializer.size(entry.getKey()) + valueSerializer.size(entry.getValue()));
+				keySerializer.write(entry.getKey(), buffer);
+				valueSerializer.write(entry.getValue(), buffer);
+			}
+		}
+	}
+
+	/*
+	 * A run file being read back through a memory-mapped buffer. _head is the
+	 * record at the front of the run.
+	 */
+	private static class Run<K, V> {
+
+		private final Path _file;
+		private final MappedByteBuffer _buffer;
+		private final HeapSerializer<K> _keySerializer;
+		private final HeapSerializer<V> _valueSerializer;
+		private int _remaining;
+		private Entry<K, V> _head;
+
+		private Run(Path file, int count, HeapSerializer<K> keySerializer, HeapSerializer<V> valueSerializer)
+				throws IOException {
+			_file = file;
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				_buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+			_keySerializer = keySerializer;
+			_valueSerializer = valueSerializer;
+			_remaining = count;
+		}
+
+		/**
+		 * Reads the next record into _head.
+		 *
+		 * @return false if the run is used up
+		 */
+		private boolean advance() {
+			if (_remaining == 0) {
+				_head = null;
+				return false;
+			}
+			_remaining--;
+			_buffer.getInt();
+			K key = _keySerializer.read(_buffer);
+			V value = _valueSerializer.read(_buffer);
+			_head = new MyHeapEntry<K, V>(key, value);
+			return true;
+		}
+
+		private void delete() {
+			try {
+				Files.deleteIfExists(_file);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import net.datastructures.Entry;
+
+/**
+ * Tests the functionality of ExternalMyHeap, which spills entries to run files
+ * in a temporary directory.
+ */
+public class ExternalMyHeapTest {
+
+	@Test
+	public void testRemoveMinMergesMemoryAndRuns() throws IOException {
+		Path directory = Files.createTempDirectory("heap-test");
+		ExternalMyHeap<Integer, String> heap = new ExternalMyHeap<Integer, String>(new IntegerComparator(),
+				HeapSerializer.integers(), HeapSerializer.strings(), 4, directory);
+
+		Random random = new Random(12);
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < 50; i++) {
+			int key = 1 + random.nextInt(99);
+			heap.insert(key, "v" + key);
+			expected.add(key);
+		}
+		Collections.sort(expected);
+
+		assertThat(heap.size(), is(50));
+		assertThat(heap.runCount(), is(12));
+		assertThat(heap.min().getKey(), is(expected.get(0)));
+
+		for (int key : expected) {
+			Entry<Integer, String> entry = heap.removeMin();
+			assertEquals(key, (int) entry.getKey());
+			assertEquals("v" + key, entry.getValue());
+		}
+		assertTrue(heap.isEmpty());
+		assertThat(heap.runCount(), is(0));
+		assertEquals(0, countFiles(directory));
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testCloseDeletesRuns() throws IOException {
+		Path directory = Files.createTempDirectory("heap-test");
+		ExternalMyHeap<Integer, String> heap = new ExternalMyHeap<Integer, String>(new IntegerComparator(),
+				HeapSerializer.integers(), HeapSerializer.strings(), 2, directory);
+		for (int key = 1; key <= 9; key++) {
+			heap.insert(key, "v");
+		}
+		assertEquals(4, countFiles(directory));
+
+		heap.close();
+		assertTrue(heap.isEmpty());
+		assertEquals(0, countFiles(directory));
+		Files.delete(directory);
+	}
+
+	/*
+	 * A spill whose serializer fails keeps every entry in memory and leaves
+	 * no file behind, and the queue goes on working once spills succeed.
+	 */
+	@Test
+	public void testFailedSpillLosesNothing() throws IOException {
+		Path directory = Files.createTempDirectory("heap-test");
+		final boolean[] fail = { true };
+		final HeapSerializer<String> strings = HeapSerializer.strings();
+		HeapSerializer<String> failing = new HeapSerializer<String>() {
+			public int size(String item) {
+				return strings.size(item);
+			}
+
+			public void write(String item, ByteBuffer buffer) {
+				if (fail[0]) {
+					throw new UncheckedIOException(new IOException("disk full"));
+				}
+				strings.write(item, buffer);
+			}
+
+			public String read(ByteBuffer buffer) {
+				return strings.read(buffer);
+			}
+		};
+		ExternalMyHeap<Integer, String> heap = new ExternalMyHeap<Integer, String>(new IntegerComparator(),
+				HeapSerializer.integers(), failing, 3, directory);
+		heap.insert(30, "C");
+		heap.insert(10, "A");
+		try {
+			heap.insert(20, "B");
+			fail();
+		} catch (UncheckedIOException e) {
+			// expected
+		}
+		assertThat(heap.size(), is(3));
+		assertThat(heap.runCount(), is(0));
+		assertEquals(0, countFiles(directory));
+
+		fail[0] = false;
+		heap.insert(40, "D");
+		assertThat(heap.runCount(), is(1));
+		assertEquals("A", heap.removeMin().getValue());
+		assertEquals("B", heap.removeMin().getValue());
+		assertEquals("C", heap.removeMin().getValue());
+		assertEquals("D", heap.removeMin().getValue());
+		assertTrue(heap.isEmpty());
+		heap.close();
+		Files.delete(directory);
+	}
+
+	/*
+	 * A run that cannot be read leaves the size as it was, since no entry
+	 * came out of the queue.
+	 */
+	@Test
+	public void testFailedReadKeepsSize() throws IOException {
+		Path directory = Files.createTempDirectory("heap-test");
+		final boolean[] fail = { false };
+		final HeapSerializer<String> strings = HeapSerializer.strings();
+		HeapSerializer<String> failing = new HeapSerializer<String>() {
+			public int size(String item) {
+				return strings.size(item);
+			}
+
+			public void write(String item, ByteBuffer buffer) {
+				strings.write(item, buffer);
+			}
+
+			public String read(ByteBuffer buffer) {
+				if (fail[0]) {
+					throw new UncheckedIOException(new IOException("bad sector"));
+				}
+				return strings.read(buffer);
+			}
+		};
+		ExternalMyHeap<Integer, String> heap = new ExternalMyHeap<Integer, String>(new IntegerComparator(),
+				HeapSerializer.integers(), failing, 2, directory);
+		heap.insert(20, "B");
+		heap.insert(10, "A");
+		assertThat(heap.runCount(), is(1));
+
+		fail[0] = true;
+		try {
+			heap.removeMin();
+			fail();
+		} catch (UncheckedIOException e) {
+			// expected
+		}
+		assertThat(heap.size(), is(2));
+		assertEquals("A", heap.min().getValue());
+		heap.close();
+		assertEquals(0, countFiles(directory));
+		Files.delete(directory);
+	}
+
+	private static long countFiles(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.count();
+		}
+	}
+
+}
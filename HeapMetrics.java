@@ -0,0 +1,222 @@
+package heap;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics a MyHeap collects once MyHeap.enableMetrics() has been called:
+ * comparator calls, entry moves, the distribution of how many levels each
+ * upSort() and downSort() travels, latency histograms of the main
+ * operations, and the largest size the heap reached.
+ *
+ * A heap with metrics disabled has no HeapMetrics at all, and its comparator
+ * is not wrapped, so the instrumentation costs nothing until it is turned on.
+ * Like MyHeap itself this class is not synchronized: values read from another
+ * thread (for example over JMX) may lag slightly behind the heap.
+ */
+public class HeapMetrics implements HeapMetricsMXBean {
+
+	/**
+	 * The operations whose latency is recorded.
+	 */
+	public enum Operation {
+		INSERT, REMOVE_MIN, REMOVE, REPLACE_KEY
+	}
+
+	private static final int MAX_DEPTH = 64;
+
+	private long _comparisons;
+	private long _entryMoves;
+	private long _sizeHighWaterMark;
+	private final long[] _siftUpDepths;
+	private final long[] _siftDownDepths;
+	private final LatencyHistogram[] _latencies;
+
+	HeapMetrics() {
+		_siftUpDepths = new long[MAX_DEPTH];
+		_siftDownDepths = new long[MAX_DEPTH];
+		_latencies = new LatencyHistogram[Operation.values().length];
+		for (int i = 0; i < _latencies.length; i++) {
+			_latencies[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * @return a copy of the metrics collected so far
+	 */
+	public HeapStats snapshot() {
+		return new HeapStats(_comparisons, _entryMoves, _sizeHighWaterMark, _siftUpDepths, _siftDownDepths,
+				_latencies);
+	}
+
+	/**
+	 * Publishes these metrics on the platform MBean server under
+	 * "heap:type=MyHeap,name=" followed by the given name.
+	 *
+	 * @return the name the metrics were registered under
+	 * @throws JMException
+	 *             if the name is invalid or already taken
+	 */
+	public ObjectName registerMBean(String name) throws JMException {
+		ObjectName objectName = ObjectName.getInstance("heap:type=MyHeap,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	/**
+	 * Removes metrics published by registerMBean().
+	 *
+	 * @throws JMException
+	 *             if nothing is registered under the name
+	 */
+	public static void unregisterMBean(ObjectName objectName) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.unregisterMBean(objectName);
+	}
+
+	/*
+	 * recording, called by MyHeap
+	 */
+
+	/**
+	 * @return a comparator that counts its calls into these metrics and then
+	 *         defers to the given one
+	 */
+	<K> Comparator<K> countingComparator(Comparator<K> comparator) {
+		return new CountingComparator<K>(comparator, this);
+	}
+
+	/**
+	 * @return the comparator a counting comparator wraps, or the given one if
+	 *         it is not counting
+	 */
+	static <K> Comparator<K> unwrap(Comparator<K> comparator) {
+		if (comparator instanceof CountingComparator) {
+			return ((CountingComparator<K>) comparator)._comparator;
+		}
+		return comparator;
+	}
+
+	void recordSiftUp(int depth) {
+		_siftUpDepths[Math.min(depth, MAX_DEPTH - 1)]++;
+		_entryMoves += depth + 1;
+	}
+
+	void recordSiftDown(int depth) {
+		_siftDownDepths[Math.min(depth, MAX_DEPTH - 1)]++;
+		_entryMoves += depth + 1;
+	}
+
+	void recordLatency(Operation operation, long nanos) {
+		_latencies[operation.ordinal()].record(nanos);
+	}
+
+	void recordSize(int size) {
+		if (size > _sizeHighWaterMark) {
+			_sizeHighWaterMark = size;
+		}
+	}
+
+	/*
+	 * HeapMetricsMXBean
+	 */
+
+	public long getComparisons() {
+		return _comparisons;
+	}
+
+	public long getEntryMoves() {
+		return _entryMoves;
+	}
+
+	public long getSizeHighWaterMark() {
+		return _sizeHighWaterMark;
+	}
+
+	public double getMeanSiftUpDepth() {
+		return HeapStats.mean(_siftUpDepths);
+	}
+
+	public double getMeanSiftDownDepth() {
+		return HeapStats.mean(_siftDownDepths);
+	}
+
+	public long getMaxSiftDownDepth() {
+		return HeapStats.max(_siftDownDepths);
+	}
+
+	public long getInsertCount() {
+		return _latencies[Operation.INSERT.ordinal()].getCount();
+	}
+
+	public long getInsertLatencyP99() {
+		return _latencies[Operation.INSERT.ordinal()].getValueAtPercentile(99);
+	}
+
+	public long getRemoveMinCount() {
+		return _latencies[Operation.REMOVE_MIN.ordinal()].getCount();
+	}
+
+	public long getRemoveMinLatencyP50() {
+		return _latencies[Operation.REMOVE_MIN.ordinal()].getValueAtPercentile(50);
+	}
+
+	public long getRemoveMinLatencyP99() {
+		return _latencies[Operation.REMOVE_MIN.ordinal()].getValueAtPercentile(99);
+	}
+
+	public long getRemoveMinLatencyMax() {
+		return _latencies[Operation.REMOVE_MIN.ordinal()].getMax();
+	}
+
+	public long getRemoveCount() {
+		return _latencies[Operation.REMOVE.ordinal()].getCount();
+	}
+
+	public long getRemoveLatencyP99() {
+		return _latencies[Operation.REMOVE.ordinal()].getValueAtPercentile(99);
+	}
+
+	public long getReplaceKeyCount() {
+		return _latencies[Operation.REPLACE_KEY.ordinal()].getCount();
+	}
+
+	public long getReplaceKeyLatencyP99() {
+		return _latencies[Operation.REPLACE_KEY.ordinal()].getValueAtPercentile(99);
+	}
+
+	public void reset() {
+		_comparisons = 0;
+		_entryMoves = 0;
+		_sizeHighWaterMark = 0;
+		Arrays.fill(_siftUpDepths, 0);
+		Arrays.fill(_siftDownDepths, 0);
+		for (LatencyHistogram histogram : _latencies) {
+			histogram.reset();
+		}
+	}
+
+	/*
+	 * The comparator a heap sorts with while metrics are enabled.
+	 */
+	private static class CountingComparator<K> implements Comparator<K> {
+
+		private final Comparator<K> _comparator;
+		private final HeapMetrics _metrics;
+
+		private CountingComparator(Comparator<K> comparator, HeapMetrics metrics) {
+			_comparator = comparator;
+			_metrics = metrics;
+		}
+
+		public int compare(K first, K second) {
+			_metrics._comparisons++;
+			return _comparator.compare(first, second);
+		}
+	}
+}
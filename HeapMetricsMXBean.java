@@ -0,0 +1,45 @@
+package heap;
+
+/**
+ * The management interface through which the metrics of a MyHeap are
+ * published over JMX. Latencies are in nanoseconds.
+ */
+public interface HeapMetricsMXBean {
+
+	long getComparisons();
+
+	long getEntryMoves();
+
+	long getSizeHighWaterMark();
+
+	double getMeanSiftUpDepth();
+
+	double getMeanSiftDownDepth();
+
+	long getMaxSiftDownDepth();
+
+	long getInsertCount();
+
+	long getInsertLatencyP99();
+
+	long getRemoveMinCount();
+
+	long getRemoveMinLatencyP50();
+
+	long getRemoveMinLatencyP99();
+
+	long getRemoveMinLatencyMax();
+
+	long getRemoveCount();
+
+	long getRemoveLatencyP99();
+
+	long getReplaceKeyCount();
+
+	long getReplaceKeyLatencyP99();
+
+	/**
+	 * Sets every counter and histogram back to zero.
+	 */
+	void reset();
+}
@@ -0,0 +1,194 @@
+package heap;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import net.datastructures.Entry;
+
+/**
+ * Tests the metrics MyHeap collects when they are enabled, and the
+ * LatencyHistogram they are recorded in.
+ */
+public class HeapMetricsTest {
+
+	@Test
+	public void testMetricsOffByDefault() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.insert(5, "A");
+		assertNull(heap.getMetrics());
+	}
+
+	@Test
+	public void testComparisonsCounted() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		HeapMetrics metrics = heap.enableMetrics();
+		heap.insert(5, "A");
+		assertEquals(0, metrics.getComparisons());
+		// the second entry is compared with the root once
+		heap.insert(3, "B");
+		assertEquals(1, metrics.getComparisons());
+		assertEquals(2, metrics.getInsertCount());
+	}
+
+	@Test
+	public void testSiftDepths() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		HeapMetrics metrics = heap.enableMetrics();
+		for (int key = 14; key <= 20; key++) {
+			heap.insert(key, "A");
+		}
+		// the eighth entry starts a fourth level, and the smallest key climbs
+		// all the way up
+		heap.insert(1, "B");
+		HeapStats stats = metrics.snapshot();
+		assertEquals(7, stats.getSiftUpDepths()[0]);
+		assertEquals(1, stats.getSiftUpDepths()[3]);
+		assertEquals(8, stats.getSizeHighWaterMark());
+
+		// 17 is pruned from the last node into the root and sinks two levels
+
+		heap.removeMin();
+		assertEquals(2, metrics.getMaxSiftDownDepth());
+		assertEquals(1, metrics.getRemoveMinCount());
+		assertEquals(0, metrics.getRemoveCount());
+	}
+
+	@Test
+	public void testEntryMoves() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		HeapMetrics metrics = heap.enableMetrics();
+		heap.insert(5, "A");
+		heap.insert(3, "B");
+		// the first insert writes once, the second moves the root down and
+		// writes the new entry into the root
+		assertEquals(3, metrics.getEntryMoves());
+	}
+
+	@Test
+	public void testLatenciesPerOperation() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		HeapMetrics metrics = heap.enableMetrics();
+		Entry<Integer, String> entry = heap.insert(5, "A");
+		heap.insert(7, "B");
+		heap.replaceKey(entry, 9);
+		heap.remove(entry);
+		heap.removeMin();
+
+		HeapStats stats = metrics.snapshot();
+		assertEquals(2, stats.getLatency(HeapMetrics.Operation.INSERT).getCount());
+		assertEquals(1, stats.getLatency(HeapMetrics.Operation.REPLACE_KEY).getCount());
+		assertEquals(1, stats.getLatency(HeapMetrics.Operation.REMOVE).getCount());
+		assertEquals(1, stats.getLatency(HeapMetrics.Operation.REMOVE_MIN).getCount());
+	}
+
+	@Test
+	public void testSnapshotIsACopy() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		HeapMetrics metrics = heap.enableMetrics();
+		heap.insert(5, "A");
+		HeapStats stats = metrics.snapshot();
+		heap.insert(3, "B");
+		assertEquals(0, stats.getComparisons());
+		assertEquals(1, stats.getLatency(HeapMetrics.Operation.INSERT).getCount());
+	}
+
+	@Test
+	public void testReset() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		HeapMetrics metrics = heap.enableMetrics();
+		heap.insert(5, "A");
+		heap.insert(3, "B");
+		metrics.reset();
+		assertEquals(0, metrics.getComparisons());
+		assertEquals(0, metrics.getInsertCount());
+		assertEquals(0, metrics.getSizeHighWaterMark());
+	}
+
+	@Test
+	public void testDisableMetrics() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		HeapMetrics metrics = heap.enableMetrics();
+		heap.insert(5, "A");
+		heap.disableMetrics();
+		heap.insert(3, "B");
+		assertNull(heap.getMetrics());
+		assertEquals(0, metrics.getComparisons());
+		assertEquals(1, metrics.getInsertCount());
+		assertEquals(3, (int) heap.removeMin().getKey());
+	}
+
+	@Test
+	public void testSetComparatorKeepsCounting() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		HeapMetrics metrics = heap.enableMetrics();
+		heap.setComparator(new IntegerComparator());
+		heap.insert(5, "A");
+		heap.insert(3, "B");
+		assertEquals(1, metrics.getComparisons());
+	}
+
+	/*
+	 * Walking the heap in key order leaves it as it is, and the comparisons
+	 * the walk makes are not counted as the heap's.
+	 */
+	@Test
+	public void testSortedIteratorIsNotCounted() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		for (int key = 1; key <= 20; key++) {
+			heap.insert(key, "v" + key);
+		}
+		HeapMetrics metrics = heap.enableMetrics();
+		Iterator<Entry<Integer, String>> iterator = heap.sortedIterator();
+		while (iterator.hasNext()) {
+			iterator.next();
+		}
+		assertEquals(0, metrics.getComparisons());
+	}
+
+	@Test
+	public void testRegisterMBean() throws Exception {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		HeapMetrics metrics = heap.enableMetrics();
+		heap.insert(5, "A");
+		ObjectName name = metrics.registerMBean("testRegisterMBean");
+		try {
+			Object inserts = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "InsertCount");
+			assertEquals(1L, inserts);
+		} finally {
+			HeapMetrics.unregisterMBean(name);
+		}
+	}
+
+	@Test
+	public void testHistogramPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int value = 1; value <= 1000; value++) {
+			histogram.record(value);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000, histogram.getMax());
+		assertEquals(500.5, histogram.getMean(), 0.001);
+		// every bucket is at most 12.5% wide
+		long median = histogram.getValueAtPercentile(50);
+		assertTrue(median >= 500 && median <= 500 * 1.125);
+		long p99 = histogram.getValueAtPercentile(99);
+		assertTrue(p99 >= 990 && p99 <= 1000);
+		assertEquals(1000, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void testHistogramSmallAndHugeValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(3);
+		assertEquals(3, histogram.getValueAtPercentile(100));
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+		assertEquals(3, histogram.getValueAtPercentile(50));
+	}
+}
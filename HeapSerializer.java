@@ -0,0 +1,72 @@
+package heap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns the keys or values of a heap into bytes and back, so that heap
+ * contents can be written to files (the spilled runs of ExternalMyHeap and the
+ * snapshots of MyHeap). Implementations write exactly size(item) bytes at the
+ * buffer's position and read them back from the same position.
+ */
+public interface HeapSerializer<T> {
+
+	/**
+	 * @return the number of bytes write() will use for the item
+	 */
+	int size(T item);
+
+	/**
+	 * Writes the item at the buffer's position, advancing it by size(item).
+	 */
+	void write(T item, ByteBuffer buffer);
+
+	/**
+	 * Reads an item written by write() at the buffer's position, advancing it
+	 * past the item.
+	 */
+	T read(ByteBuffer buffer);
+
+	/**
+	 * @return a serializer for non-null Integers, four bytes each
+	 */
+	static HeapSerializer<Integer> integers() {
+		return new HeapSerializer<Integer>() {
+			public int size(Integer item) {
+				return 4;
+			}
+
+			public void write(Integer item, ByteBuffer buffer) {
+				buffer.putInt(item);
+			}
+
+			public Integer read(ByteBuffer buffer) {
+				return buffer.getInt();
+			}
+		};
+	}
+
+	/**
+	 * @return a serializer for non-null Strings, stored as a length followed
+	 *         by UTF-8 bytes
+	 */
+	static HeapSerializer<String> strings() {
+		return new HeapSerializer<String>() {
+			public int size(String item) {
+				return 4 + item.getBytes(StandardCharsets.UTF_8).length;
+			}
+
+			public void write(String item, ByteBuffer buffer) {
+				byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+				buffer.putInt(bytes.length);
+				buffer.put(bytes);
+			}
+
+			public String read(ByteBuffer buffer) {
+				byte[] bytes = new byte[buffer.getInt()];
+				buffer.get(bytes);
+				return new String(bytes, StandardCharsets.UTF_8);
+			}
+		};
+	}
+}
@@ -0,0 +1,98 @@
+package heap;
+
+/**
+ * A point in time copy of the metrics a MyHeap has collected, as returned by
+ * HeapMetrics.snapshot(). Later operations on the heap do not change it.
+ */
+public class HeapStats {
+
+	private final long _comparisons;
+	private final long _entryMoves;
+	private final long _sizeHighWaterMark;
+	private final long[] _siftUpDepths;
+	private final long[] _siftDownDepths;
+	private final LatencyHistogram[] _latencies;
+
+	HeapStats(long comparisons, long entryMoves, long sizeHighWaterMark, long[] siftUpDepths,
+			long[] siftDownDepths, LatencyHistogram[] latencies) {
+		_comparisons = comparisons;
+		_entryMoves = entryMoves;
+		_sizeHighWaterMark = sizeHighWaterMark;
+		_siftUpDepths = siftUpDepths.clone();
+		_siftDownDepths = siftDownDepths.clone();
+		_latencies = new LatencyHistogram[latencies.length];
+		for (int i = 0; i < latencies.length; i++) {
+			_latencies[i] = new LatencyHistogram(latencies[i]);
+		}
+	}
+
+	/**
+	 * @return the number of times the heap's comparator was called
+	 */
+	public long getComparisons() {
+		return _comparisons;
+	}
+
+	/**
+	 * @return the number of times an entry was written to a position of the
+	 *         tree while sorting
+	 */
+	public long getEntryMoves() {
+		return _entryMoves;
+	}
+
+	/**
+	 * @return the largest size the heap has had
+	 */
+	public long getSizeHighWaterMark() {
+		return _sizeHighWaterMark;
+	}
+
+	/**
+	 * @return how many upSort() calls moved their entry up by d levels, at
+	 *         index d
+	 */
+	public long[] getSiftUpDepths() {
+		return _siftUpDepths.clone();
+	}
+
+	/**
+	 * @return how many downSort() calls moved their entry down by d levels,
+	 *         at index d
+	 */
+	public long[] getSiftDownDepths() {
+		return _siftDownDepths.clone();
+	}
+
+	/**
+	 * @return the latency histogram, in nanoseconds, of the given operation
+	 */
+	public LatencyHistogram getLatency(HeapMetrics.Operation operation) {
+		return new LatencyHistogram(_latencies[operation.ordinal()]);
+	}
+
+	/**
+	 * @return the mean of a depth histogram
+	 */
+	static double mean(long[] depths) {
+		long count = 0;
+		long total = 0;
+		for (int depth = 0; depth < depths.length; depth++) {
+			count += depths[depth];
+			total += depth * depths[depth];
+		}
+		return count == 0 ? 0 : (double) total / count;
+	}
+
+	/**
+	 * @return the largest depth with a non-zero count
+	 */
+	static long max(long[] depths) {
+		for (int depth = depths.length - 1; depth > 0; depth--) {
+			if (depths[depth] != 0) {
+				return depth;
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,259 @@
+package heap;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * An indexed priority queue over the int values 0..n-1, such as the vertices
+ * of a graph, for algorithms like Dijkstra's or Prim's that look entries up
+ * by value rather than keeping handles. There are no entry objects at all:
+ * three arrays sized to n up front hold the heap of values, the heap slot of
+ * every value (-1 if absent), and the key of every value, so finding a value
+ * is one array read and nothing is allocated after construction.
+ *
+ * The heap is a binary heap laid out in the array: the value at slot i has
+ * its parent at (i - 1) / 2 and its children at 2i + 1 and 2i + 2. Keys follow
+ * the same rules as MyHeap. insert(), removeMin(), remove() and replaceKey()
+ * run in O(log n) time, the rest in O(1) time.
+ */
+
+public class IntIndexedHeap<K> {
+
+	private final int[] _heap;
+	private final int[] _slots;
+	private final Object[] _keys;
+	private int _size;
+	private final Comparator<K> _comparator;
+
+	/**
+	 * Creates an empty heap for the values 0..capacity-1.
+	 *
+	 * @param comparator
+	 *            the comparator to be used for heap keys
+	 * @param capacity
+	 *            the number of values
+	 * @throws IllegalArgumentException
+	 *             if capacity is not positive
+	 */
+	public IntIndexedHeap(Comparator<K> comparator, int capacity) throws IllegalArgumentException {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		_heap = new int[capacity];
+		_slots = new int[capacity];
+		Arrays.fill(_slots, -1);
+		_keys = new Object[capacity];
+		_comparator = comparator;
+	}
+
+	/**
+	 * @return the number of values, which range over 0..capacity-1
+	 */
+	public int capacity() {
+		return _slots.length;
+	}
+
+	/**
+	 * Returns the number of values in the heap. This method runs in O(1)
+	 * time.
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Returns whether the heap is empty. This method runs in O(1) time.
+	 */
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * Returns whether the value is in the heap. This method runs in O(1)
+	 * time.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the value is not in 0..capacity-1
+	 */
+	public boolean contains(int value) throws IllegalArgumentException {
+		checkValue(value);
+		return _slots[value] >= 0;
+	}
+
+	/**
+	 * Returns the key of a value in the heap. This method runs in O(1) time.
+	 *
+	 * @throws InvalidEntryException
+	 *             if the value is not in the heap
+	 */
+	public K keyOf(int value) throws InvalidEntryException {
+		checkContained(value);
+		return key(value);
+	}
+
+	/**
+	 * Returns but does not remove the value with minimum key. This method
+	 * runs in O(1) time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the heap is empty
+	 */
+	public int min() throws EmptyPriorityQueueException {
+		if (isEmpty()) {
+			throw new EmptyPriorityQueueException("heap is empty");
+		}
+		return _heap[0];
+	}
+
+	/**
+	 * Inserts a value with the given key. This method runs in O(log n) time.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the value is not in 0..capacity-1 or already in the heap
+	 * @throws InvalidKeyException
+	 *             if the key is not suitable for this heap
+	 */
+	public void insert(int value, K key) throws IllegalArgumentException, InvalidKeyException {
+		checkValue(value);
+		if (_slots[value] >= 0) {
+			throw new IllegalArgumentException("value already in heap: " + value);
+		}
+		MyHeap.checkKey(key);
+		_keys[value] = key;
+		upSort(value, _size++);
+	}
+
+	/**
+	 * Removes and returns the value with minimum key. This method runs in
+	 * O(log n) time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the heap is empty
+	 */
+	public int removeMin() throws EmptyPriorityQueueException {
+		int value = min();
+		remove(value);
+		return value;
+	}
+
+	/**
+	 * Removes a value from the heap and returns its key. This method runs in
+	 * O(log n) time.
+	 *
+	 * @throws InvalidEntryException
+	 *             if the value is not in the heap
+	 */
+	public K remove(int value) throws InvalidEntryException {
+		checkContained(value);
+		K key = key(value);
+		int hole = _slots[value];
+		int last = _heap[--_size];
+		_slots[value] = -1;
+		_keys[value] = null;
+
+		// refill the hole left by the removed value with the last value
+		if (last != value) {
+			resort(last, hole);
+		}
+		return key;
+	}
+
+	/**
+	 * Replaces the key of a value in the heap. This method runs in O(log n)
+	 * time.
+	 *
+	 * @return the old key of the value
+	 * @throws InvalidEntryException
+	 *             if the value is not in the heap
+	 * @throws InvalidKeyException
+	 *             if the key is not suitable for this heap
+	 */
+	public K replaceKey(int value, K key) throws InvalidEntryException, InvalidKeyException {
+		checkContained(value);
+		MyHeap.checkKey(key);
+		K oldKey = key(value);
+		_keys[value] = key;
+		resort(value, _slots[value]);
+		return oldKey;
+	}
+
+	private void checkValue(int value) throws IllegalArgumentException {
+		if (value < 0 || value >= _slots.length) {
+			throw new IllegalArgumentException("value out of range: " + value);
+		}
+	}
+
+	private void checkContained(int value) throws InvalidEntryException {
+		if (value < 0 || value >= _slots.length || _slots[value] < 0) {
+			throw new InvalidEntryException("value not in heap: " + value);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private K key(int value) {
+		return (K) _keys[value];
+	}
+
+	/**
+	 * Places a value that belongs at the given slot (whose slot may still
+	 * hold a stale occupant) up or down the heap as its key requires.
+	 */
+	private void resort(int value, int slot) {
+		if (slot > 0 && _comparator.compare(key(value), key(_heap[(slot - 1) / 2])) < 0) {
+			upSort(value, slot);
+		} else {
+			downSort(value, slot);
+		}
+	}
+
+	/**
+	 * Walks the value up from the given slot, moving every parent with a
+	 * larger key one level down, and writes the value once where it comes to
+	 * rest.
+	 */
+	private void upSort(int value, int slot) {
+		K key = key(value);
+		while (slot > 0) {
+			int parent = (slot - 1) / 2;
+			if (_comparator.compare(key, key(_heap[parent])) >= 0) {
+				break;
+			}
+			place(_heap[parent], slot);
+			slot = parent;
+		}
+		place(value, slot);
+	}
+
+	/**
+	 * Walks the value down from the given slot, moving the smaller child one
+	 * level up while it is smaller than the value, and writes the value once
+	 * where it comes to rest.
+	 */
+	private void downSort(int value, int slot) {
+		K key = key(value);
+		while (true) {
+			int child = 2 * slot + 1;
+			if (child >= _size) {
+				break;
+			}
+			if (child + 1 < _size && _comparator.compare(key(_heap[child + 1]), key(_heap[child])) < 0) {
+				child++;
+			}
+			if (_comparator.compare(key, key(_heap[child])) <= 0) {
+				break;
+			}
+			place(_heap[child], slot);
+			slot = child;
+		}
+		place(value, slot);
+	}
+
+	private void place(int value, int slot) {
+		_heap[slot] = value;
+		_slots[value] = slot;
+	}
+}
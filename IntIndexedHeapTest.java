@@ -0,0 +1,98 @@
+package heap;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import net.datastructures.InvalidEntryException;
+
+/**
+ * Tests that IntIndexedHeap finds, re-keys and removes values through its
+ * index arrays.
+ */
+public class IntIndexedHeapTest {
+
+	@Test
+	public void testInsertAndRemoveMin() {
+		IntIndexedHeap<Integer> heap = new IntIndexedHeap<Integer>(new IntegerComparator(), 5);
+		heap.insert(0, 40);
+		heap.insert(3, 10);
+		heap.insert(4, 30);
+		assertTrue(heap.contains(3));
+		assertFalse(heap.contains(1));
+		assertEquals(3, heap.min());
+
+		assertEquals(3, heap.removeMin());
+		assertFalse(heap.contains(3));
+		assertEquals(4, heap.removeMin());
+		assertEquals(0, heap.removeMin());
+		assertTrue(heap.isEmpty());
+	}
+
+	@Test
+	public void testReplaceKeyAndRemove() {
+		IntIndexedHeap<Integer> heap = new IntIndexedHeap<Integer>(new IntegerComparator(), 4);
+		heap.insert(0, 40);
+		heap.insert(1, 20);
+		heap.insert(2, 30);
+		assertEquals(40, (int) heap.replaceKey(0, 5));
+		assertEquals(0, heap.min());
+		assertEquals(5, (int) heap.keyOf(0));
+		assertEquals(20, (int) heap.remove(1));
+		assertEquals(2, heap.size());
+
+		// a removed value can be inserted again
+		heap.insert(1, 1);
+		assertEquals(1, heap.min());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInsertTwiceThrowsIllegalArgumentException() {
+		IntIndexedHeap<Integer> heap = new IntIndexedHeap<Integer>(new IntegerComparator(), 4);
+		heap.insert(2, 10);
+		heap.insert(2, 20);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testValueOutOfRangeThrowsIllegalArgumentException() {
+		new IntIndexedHeap<Integer>(new IntegerComparator(), 4).insert(4, 10);
+	}
+
+	@Test(expected = InvalidEntryException.class)
+	public void testRemoveAbsentValueThrowsInvalidEntryException() {
+		IntIndexedHeap<Integer> heap = new IntIndexedHeap<Integer>(new IntegerComparator(), 4);
+		heap.insert(2, 10);
+		heap.remove(1);
+	}
+
+	/*
+	 * Fills the heap, reverses the key order so every value sifts across the
+	 * tree, removes every third value from the inside and drains the rest,
+	 * checking the index arrays along the way.
+	 */
+	@Test
+	public void testFullHeapReversedAndDrained() {
+		int n = 64;
+		IntIndexedHeap<Integer> heap = new IntIndexedHeap<Integer>(new IntegerComparator(), n);
+		for (int value = 0; value < n; value++) {
+			heap.insert(value, value + 1);
+		}
+		for (int value = 0; value < n; value++) {
+			assertEquals(value + 1, (int) heap.replaceKey(value, n - value));
+		}
+		assertEquals(n - 1, heap.min());
+
+		for (int value = 0; value < n; value += 3) {
+			assertEquals(n - value, (int) heap.remove(value));
+			assertFalse(heap.contains(value));
+		}
+		for (int value = n - 1; value >= 0; value--) {
+			if (value % 3 != 0) {
+				assertEquals(n - value, (int) heap.keyOf(value));
+				assertEquals(value, heap.removeMin());
+				assertFalse(heap.contains(value));
+			}
+		}
+		assertTrue(heap.isEmpty());
+	}
+}
@@ -0,0 +1,314 @@
+package heap;
+
+import java.util.Arrays;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * An adaptable priority queue specialized for int keys. It follows the same
+ * contract as MyHeap (keys must lie in 1..99, entries handed out by insert()
+ * can later be passed to remove(), replaceKey() and replaceValue()), but keeps
+ * the keys in an int[] that runs parallel to the array of entries. Sifting
+ * compares those ints directly, so there is no unboxing and no Comparator call
+ * on the hot path, and the int overloads of insert() and replaceKey() do not
+ * box the key at all.
+ *
+ * The heap is a binary heap laid out in the arrays: the entry at index i has
+ * its parent at (i - 1) / 2 and its children at 2i + 1 and 2i + 2. Every entry
+ * remembers its index, which is what gives remove() and replaceKey() their
+ * O(log n) running time.
+ */
+
+public class IntKeyHeap<V> implements AdaptablePriorityQueue<Integer, V> {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] _keys;
+	private IntKeyEntry<V>[] _entries;
+	private int _size;
+
+	/**
+	 * Creates an empty heap.
+	 */
+	public IntKeyHeap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty heap that can hold the given number of entries before
+	 * its arrays have to grow.
+	 *
+	 * @param capacity
+	 *            the initial number of slots
+	 * @throws IllegalArgumentException
+	 *             if capacity is not positive
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public IntKeyHeap(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		_keys = new int[capacity];
+		_entries = (IntKeyEntry<V>[]) new IntKeyEntry[capacity];
+		_size = 0;
+	}
+
+	/**
+	 * Returns the size of the heap. This method runs in O(1) time.
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Returns whether the heap is empty. This method runs in O(1) time.
+	 */
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * Returns but does not remove an entry with minimum key. This method runs
+	 * in O(1) time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the heap is empty
+	 */
+	public Entry<Integer, V> min() throws EmptyPriorityQueueException {
+		if (isEmpty()) {
+			throw new EmptyPriorityQueueException("heap is empty");
+		}
+		return _entries[0];
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the entry created. This method runs
+	 * in O(log n) time.
+	 *
+	 * @throws InvalidKeyException
+	 *             if the key is null or not in 1..99
+	 */
+	public Entry<Integer, V> insert(Integer key, V value) throws InvalidKeyException {
+		if (key == null) {
+			throw new InvalidKeyException("null key");
+		}
+		return insert(key.intValue(), value);
+	}
+
+	/**
+	 * Inserts a key-value pair without boxing the key and returns the entry
+	 * created. This method runs in O(log n) time.
+	 *
+	 * @throws InvalidKeyException
+	 *             if the key is not in 1..99
+	 */
+	public Entry<Integer, V> insert(int key, V value) throws InvalidKeyException {
+		checkKey(key);
+		if (_size == _keys.length) {
+			_keys = Arrays.copyOf(_keys, _size * 2);
+			_entries = Arrays.copyOf(_entries, _size * 2);
+		}
+		IntKeyEntry<V> entry = new IntKeyEntry<V>(key, value);
+		upSort(entry, _size++);
+		return entry;
+	}
+
+	/**
+	 * Removes and returns an entry with minimum key. This method runs in
+	 * O(log n) time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the heap is empty
+	 */
+	public Entry<Integer, V> removeMin() throws EmptyPriorityQueueException {
+		return remove(min());
+	}
+
+	/**
+	 * Removes and returns the given entry from the heap. This method runs in
+	 * O(log n) time.
+	 *
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this heap
+	 */
+	public Entry<Integer, V> remove(Entry<Integer, V> entry) throws InvalidEntryException {
+		IntKeyEntry<V> checkedEntry = checkAndConvertEntry(entry);
+		int index = checkedEntry._index;
+
+		IntKeyEntry<V> last = _entries[--_size];
+		_entries[_size] = null;
+		checkedEntry._index = -1;
+
+		// refill the hole left by the removed entry with the last entry
+		if (last != checkedEntry) {
+			resort(last, index);
+		}
+		return checkedEntry;
+	}
+
+	/**
+	 * Replaces the key of the given entry. This method runs in O(log n) time.
+	 *
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this heap
+	 * @throws InvalidKeyException
+	 *             if the key is null or not in 1..99
+	 */
+	public Integer replaceKey(Entry<Integer, V> entry, Integer key)
+			throws InvalidEntryException, InvalidKeyException {
+		if (key == null) {
+			throw new InvalidKeyException("null key");
+		}
+		return replaceKey(entry, key.intValue());
+	}
+
+	/**
+	 * Replaces the key of the given entry without boxing the new key. This
+	 * method runs in O(log n) time.
+	 *
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this heap
+	 * @throws InvalidKeyException
+	 *             if the key is not in 1..99
+	 */
+	public int replaceKey(Entry<Integer, V> entry, int key) throws InvalidEntryException, InvalidKeyException {
+		IntKeyEntry<V> checkedEntry = checkAndConvertEntry(entry);
+		checkKey(key);
+
+		int oldKey = checkedEntry._key;
+		checkedEntry._key = key;
+		resort(checkedEntry, checkedEntry._index);
+		return oldKey;
+	}
+
+	/**
+	 * Replaces the value of the given entry. This method runs in O(1) time.
+	 *
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this heap
+	 */
+	public V replaceValue(Entry<Integer, V> entry, V value) throws InvalidEntryException {
+		IntKeyEntry<V> checkedEntry = checkAndConvertEntry(entry);
+		V oldValue = checkedEntry._value;
+		checkedEntry._value = value;
+		return oldValue;
+	}
+
+	/**
+	 * Determines whether a given entry is currently stored in this heap and
+	 * converts it to an IntKeyEntry.
+	 *
+	 * @throws InvalidEntryException
+	 *             if the entry is not of the proper class or not in this heap
+	 */
+	@SuppressWarnings("unchecked")
+	private IntKeyEntry<V> checkAndConvertEntry(Entry<Integer, V> entry) throws InvalidEntryException {
+		if (!(entry instanceof IntKeyEntry)) {
+			throw new InvalidEntryException("Invalid entry");
+		}
+		IntKeyEntry<V> checkedEntry = (IntKeyEntry<V>) entry;
+		int index = checkedEntry._index;
+		if (index < 0 || index >= _size || _entries[index] != checkedEntry) {
+			throw new InvalidEntryException("entry not in heap");
+		}
+		return checkedEntry;
+	}
+
+	private static void checkKey(int key) throws InvalidKeyException {
+		if (key < 1 || key > 99) {
+			throw new InvalidKeyException("key out of appropriate range");
+		}
+	}
+
+	/**
+	 * Places an entry whose slot is the given index (which may hold a stale
+	 * occupant) so that heap order is restored, moving it up or down as its
+	 * key requires.
+	 */
+	private void resort(IntKeyEntry<V> entry, int index) {
+		if (index > 0 && entry._key < _keys[(index - 1) / 2]) {
+			upSort(entry, index);
+		} else {
+			downSort(entry, index);
+		}
+	}
+
+	/**
+	 * Walks the entry up from the given index, moving every larger parent one
+	 * level down, and writes the entry once into the slot where it comes to
+	 * rest.
+	 */
+	private void upSort(IntKeyEntry<V> entry, int index) {
+		int key = entry._key;
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (key >= _keys[parent]) {
+				break;
+			}
+			place(_entries[parent], index);
+			index = parent;
+		}
+		place(entry, index);
+	}
+
+	/**
+	 * Walks the entry down from the given index, moving the smaller child one
+	 * level up while it is smaller than the entry, and writes the entry once
+	 * into the slot where it comes to rest.
+	 */
+	private void downSort(IntKeyEntry<V> entry, int index) {
+		int key = entry._key;
+		int half = _size / 2;
+		while (index < half) {
+			int child = 2 * index + 1;
+			int right = child + 1;
+			if (right < _size && _keys[right] < _keys[child]) {
+				child = right;
+			}
+			if (key <= _keys[child]) {
+				break;
+			}
+			place(_entries[child], index);
+			index = child;
+		}
+		place(entry, index);
+	}
+
+	private void place(IntKeyEntry<V> entry, int index) {
+		_entries[index] = entry;
+		_keys[index] = entry._key;
+		entry._index = index;
+	}
+
+	/*
+	 * The entry handed out by this heap. The key is kept as an int, and since
+	 * all valid keys are small, getKey() is served from the Integer cache.
+	 */
+	private static class IntKeyEntry<V> implements Entry<Integer, V> {
+
+		private int _key;
+		private V _value;
+		private int _index;
+
+		private IntKeyEntry(int key, V value) {
+			_key = key;
+			_value = value;
+			_index = -1;
+		}
+
+		public Integer getKey() {
+			return _key;
+		}
+
+		public V getValue() {
+			return _value;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.Entry;
+
+/**
+ * Runs the AdaptablePriorityQueueTest cases against IntKeyHeap, the int key
+ * specialization of MyHeap, starting from a capacity of one so that the
+ * arrays grow during most of them, plus a case for the int overloads.
+ */
+public class IntKeyHeapTest extends AdaptablePriorityQueueTest {
+
+	@Override
+	protected AdaptablePriorityQueue<Integer, String> newHeap() {
+		return new IntKeyHeap<String>(1);
+	}
+
+	/*
+	 * replaceKey(Entry, int) returns the old key unboxed and sifts the entry
+	 * like the boxed version.
+	 */
+	@Test
+	public void testReplaceKeyAndValue() {
+		IntKeyHeap<String> heap = new IntKeyHeap<String>();
+		Entry<Integer, String> entry1 = heap.insert(11, "A");
+		heap.insert(13, "B");
+		Entry<Integer, String> entry3 = heap.insert(64, "C");
+
+		assertEquals(64, heap.replaceKey(entry3, 2));
+		assertEquals(entry3, heap.min());
+		assertEquals(11, (int) heap.replaceKey(entry1, Integer.valueOf(90)));
+		assertEquals("A", heap.replaceValue(entry1, "Z"));
+
+		assertThat(heap.removeMin().getValue(), is("C"));
+		assertThat(heap.removeMin().getValue(), is("B"));
+		assertThat(heap.removeMin().getValue(), is("Z"));
+	}
+
+}
@@ -0,0 +1,269 @@
+package heap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import net.datastructures.Entry;
+
+/**
+ * Merges any number of sources, each already sorted by key, into one sorted
+ * sequence that is pulled lazily through next() or stream(). The head of
+ * every source sits in a MyHeap keyed by the head's key. Taking the minimum
+ * advances its source and, instead of a removeMin() followed by an insert(),
+ * gives the heap entry the next key with replaceKey(); since keys of a sorted
+ * source only grow, that is a single downSort from the root per element
+ * produced. A source is only removed from the heap when it runs out.
+ *
+ * Sources are plain Iterators, or FileSources that read a file of records
+ * written by ExternalMyHeap (the int length of the key and value bytes, then
+ * the key and the value) through one large buffer each, so hundreds of files
+ * can be merged with a few big sequential reads per file instead of a
+ * BufferedReader apiece. close() closes every source that is Closeable. An
+ * I/O failure while reading a file is reported as an UncheckedIOException.
+ *
+ * Keys follow the same rules as MyHeap. Each element costs O(log k) time for
+ * k sources.
+ */
+
+public class KWayMerge<K, V> implements Iterator<Entry<K, V>>, Closeable {
+
+	// default FileSource buffer, one megabyte
+	private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	private final MyHeap<K, Head<K, V>> _heads;
+	private final List<Iterator<? extends Entry<K, V>>> _sources;
+
+	/**
+	 * Creates a merge over the given sources, reading the first element of
+	 * each.
+	 *
+	 * @param comparator
+	 *            the comparator every source is sorted by
+	 * @param sources
+	 *            the sorted sources
+	 */
+	public KWayMerge(Comparator<K> comparator, List<? extends Iterator<? extends Entry<K, V>>> sources) {
+		_heads = new MyHeap<K, Head<K, V>>(comparator,
+				new MyArrayHeapTree<MyHeapEntry<K, Head<K, V>>>(Math.max(1, sources.size())));
+		_sources = new ArrayList<Iterator<? extends Entry<K, V>>>(sources);
+		List<Entry<K, Head<K, V>>> heads = new ArrayList<Entry<K, Head<K, V>>>(sources.size());
+		for (Iterator<? extends Entry<K, V>> source : _sources) {
+			if (source.hasNext()) {
+				Head<K, V> head = new Head<K, V>(source);
+				heads.add(new MyHeapEntry<K, Head<K, V>>(head._current.getKey(), head));
+			}
+		}
+		_heads.insertAll(heads);
+	}
+
+	/**
+	 * Opens a source over a file of records, read through a one megabyte
+	 * buffer.
+	 */
+	public static <K, V> FileSource<K, V> fileSource(FileChannel channel, HeapSerializer<K> keySerializer,
+			HeapSerializer<V> valueSerializer) {
+		return new FileSource<K, V>(channel, keySerializer, valueSerializer, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @return whether there are elements left in any source
+	 */
+	public boolean hasNext() {
+		return !_heads.isEmpty();
+	}
+
+	/**
+	 * Returns the element with the smallest key among the heads of the
+	 * sources and advances its source. This method runs in O(log k) time.
+	 *
+	 * @throws NoSuchElementException
+	 *             if every source is used up
+	 */
+	public Entry<K, V> next() {
+		if (_heads.isEmpty()) {
+			throw new NoSuchElementException();
+		}
+		Entry<K, Head<K, V>> top = _heads.min();
+		Head<K, V> head = top.getValue();
+		Entry<K, V> element = head._current;
+		if (head._source.hasNext()) {
+			head._current = head._source.next();
+			// replace the top: one downSort instead of a remove and an insert
+			_heads.replaceKey(top, head._current.getKey());
+		} else {
+			_heads.removeMin();
+		}
+		return element;
+	}
+
+	/**
+	 * @return a sequential stream of the merged elements that pulls from the
+	 *         sources as it is consumed and closes them when it is closed
+	 */
+	public Stream<Entry<K, V>> stream() {
+		Spliterator<Entry<K, V>> spliterator = Spliterators.spliteratorUnknownSize(this,
+				Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false).onClose(() -> {
+			try {
+				close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Closes every source that is Closeable, even if closing one of them
+	 * fails.
+	 *
+	 * @throws IOException
+	 *             the first failure, if any
+	 */
+	public void close() throws IOException {
+		IOException failure = null;
+		for (Iterator<? extends Entry<K, V>> source : _sources) {
+			if (source instanceof Closeable) {
+				try {
+					((Closeable) source).close();
+				} catch (IOException e) {
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/*
+	 * A source and the element at its front.
+	 */
+	private static class Head<K, V> {
+
+		private final Iterator<? extends Entry<K, V>> _source;
+		private Entry<K, V> _current;
+
+		private Head(Iterator<? extends Entry<K, V>> source) {
+			_source = source;
+			_current = source.next();
+		}
+	}
+
+	/**
+	 * A sorted source that reads records from a file channel through one
+	 * large direct buffer. A record that does not fit in what is left of the
+	 * buffer is read after compacting it, and a record larger than the whole
+	 * buffer grows it. The channel is closed by close() or once the last
+	 * record has been read.
+	 */
+	public static class FileSource<K, V> implements Iterator<Entry<K, V>>, Closeable {
+
+		private final FileChannel _channel;
+		private final HeapSerializer<K> _keySerializer;
+		private final HeapSerializer<V> _valueSerializer;
+		private ByteBuffer _buffer;
+		private Entry<K, V> _next;
+
+		/**
+		 * Creates a source over the records of the channel, starting at its
+		 * current position.
+		 *
+		 * @param bufferSize
+		 *            the number of bytes read from the channel at a time
+		 * @throws IllegalArgumentException
+		 *             if bufferSize is less than 4
+		 */
+		public FileSource(FileChannel channel, HeapSerializer<K> keySerializer, HeapSerializer<V> valueSerializer,
+				int bufferSize) throws IllegalArgumentException {
+			if (bufferSize < 4) {
+				throw new IllegalArgumentException("buffer must hold at least 4 bytes");
+			}
+			_channel = channel;
+			_keySerializer = keySerializer;
+			_valueSerializer = valueSerializer;
+			_buffer = ByteBuffer.allocateDirect(bufferSize);
+			_buffer.flip();
+			_next = read();
+		}
+
+		public boolean hasNext() {
+			return _next != null;
+		}
+
+		public Entry<K, V> next() {
+			if (_next == null) {
+				throw new NoSuchElementException();
+			}
+			Entry<K, V> next = _next;
+			_next = read();
+			return next;
+		}
+
+		public void close() throws IOException {
+			_next = null;
+			_channel.close();
+		}
+
+		/**
+		 * @return the next record, or null at the end of the channel
+		 */
+		private Entry<K, V> read() {
+			try {
+				if (!fill(4)) {
+					if (_buffer.hasRemaining()) {
+						throw new IOException("truncated record length");
+					}
+					close();
+					return null;
+				}
+				int length = _buffer.getInt();
+				if (!fill(length)) {
+					throw new IOException("truncated record");
+				}
+				K key = _keySerializer.read(_buffer);
+				V value = _valueSerializer.read(_buffer);
+				return new MyHeapEntry<K, V>(key, value);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**
+		 * Makes sure the buffer holds at least the given number of unread
+		 * bytes, reading from the channel as needed.
+		 *
+		 * @return false if the channel ended first
+		 */
+		private boolean fill(int needed) throws IOException {
+			if (_buffer.remaining() >= needed) {
+				return true;
+			}
+			if (needed > _buffer.capacity()) {
+				ByteBuffer larger = ByteBuffer.allocateDirect(needed);
+				larger.put(_buffer);
+				_buffer = larger;
+			} else {
+				_buffer.compact();
+			}
+			while (_buffer.position() < needed && _channel.read(_buffer) >= 0) {
+				// keep reading, a channel may return fewer bytes than asked for
+			}
+			_buffer.flip();
+			return _buffer.remaining() >= needed;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import net.datastructures.Entry;
+
+/**
+ * Tests KWayMerge over in-memory iterators and over run files read through
+ * small buffers, so that records straddle buffer refills.
+ */
+public class KWayMergeTest {
+
+	@Test
+	public void testMergeIterators() {
+		List<Iterator<Entry<Integer, String>>> sources = new ArrayList<Iterator<Entry<Integer, String>>>();
+		sources.add(source(1, 4, 9).iterator());
+		sources.add(source().iterator());
+		sources.add(source(2, 3, 10, 11).iterator());
+		sources.add(source(4).iterator());
+
+		KWayMerge<Integer, String> merge = new KWayMerge<Integer, String>(new IntegerComparator(), sources);
+		List<Integer> keys = new ArrayList<Integer>();
+		while (merge.hasNext()) {
+			keys.add(merge.next().getKey());
+		}
+		assertThat(keys, is(Arrays.asList(1, 2, 3, 4, 4, 9, 10, 11)));
+	}
+
+	@Test
+	public void testStreamIsLazy() {
+		List<Iterator<Entry<Integer, String>>> sources = new ArrayList<Iterator<Entry<Integer, String>>>();
+		sources.add(source(1, 3, 5).iterator());
+		sources.add(source(2, 4, 6).iterator());
+		KWayMerge<Integer, String> merge = new KWayMerge<Integer, String>(new IntegerComparator(), sources);
+
+		List<Integer> firstThree = merge.stream().limit(3).map(Entry::getKey).collect(Collectors.toList());
+		assertThat(firstThree, is(Arrays.asList(1, 2, 3)));
+		assertTrue(merge.hasNext());
+	}
+
+	/*
+	 * Run f holds the keys that leave f when divided by 9 and the key 50, and
+	 * the last run is empty, so the merge sees runs of different lengths,
+	 * ties across runs and a run with nothing in it.
+	 */
+	@Test
+	public void testMergeFiles() throws IOException {
+		Path directory = Files.createTempDirectory("heap-test");
+		List<Integer> expected = new ArrayList<Integer>();
+		List<Iterator<Entry<Integer, String>>> sources = new ArrayList<Iterator<Entry<Integer, String>>>();
+		for (int file = 0; file < 10; file++) {
+			List<Entry<Integer, String>> run = new ArrayList<Entry<Integer, String>>();
+			for (int key = 1; key < 100 && file < 9; key++) {
+				if (key % 9 == file || key == 50) {
+					run.add(new MyHeapEntry<Integer, String>(key, "value " + key));
+					expected.add(key);
+				}
+			}
+			Path path = directory.resolve("run" + file);
+			Files.createFile(path);
+			ExternalMyHeap.writeRun(path, run, HeapSerializer.integers(), HeapSerializer.strings());
+			// buffers smaller than one record force both refills and growth
+			sources.add(new KWayMerge.FileSource<Integer, String>(FileChannel.open(path, StandardOpenOption.READ),
+					HeapSerializer.integers(), HeapSerializer.strings(), 4 + 2 * file));
+		}
+		Collections.sort(expected);
+
+		try (KWayMerge<Integer, String> merge = new KWayMerge<Integer, String>(new IntegerComparator(), sources)) {
+			List<Integer> keys = new ArrayList<Integer>();
+			while (merge.hasNext()) {
+				Entry<Integer, String> entry = merge.next();
+				assertEquals("value " + entry.getKey(), entry.getValue());
+				keys.add(entry.getKey());
+			}
+			assertThat(keys, is(expected));
+		}
+		for (int file = 0; file < 10; file++) {
+			Files.delete(directory.resolve("run" + file));
+		}
+		Files.delete(directory);
+	}
+
+	private static List<Entry<Integer, String>> source(int... keys) {
+		List<Entry<Integer, String>> source = new ArrayList<Entry<Integer, String>>();
+		for (int key : keys) {
+			source.add(new MyHeapEntry<Integer, String>(key, "v" + key));
+		}
+		return source;
+	}
+}
@@ -0,0 +1,77 @@
+package heap;
+
+/**
+ * Maps the keys of a heap to long prefixes that order the same way as the
+ * heap's comparator, so that most comparisons made while sorting entries up
+ * and down are a single compare of two longs instead of a comparator call.
+ * MyHeap computes the prefix of an entry once, when the entry goes into the
+ * heap or its key is replaced, and stores it in the entry.
+ *
+ * Prefixes are compared as unsigned longs. If the prefix of one key is
+ * smaller than the prefix of another, the first key must be smaller according
+ * to the comparator; keys with equal prefixes are compared with the
+ * comparator, unless the normalizer is exact.
+ */
+public interface KeyNormalizer<K> {
+
+	/**
+	 * @return the prefix of a non-null key
+	 */
+	long prefix(K key);
+
+	/**
+	 * @return whether equal prefixes always mean equal keys, so that ties
+	 *         need no comparator call
+	 */
+	default boolean isExact() {
+		return false;
+	}
+
+	/**
+	 * @return an exact normalizer for Integers in their natural order
+	 */
+	static KeyNormalizer<Integer> integers() {
+		return new KeyNormalizer<Integer>() {
+			public long prefix(Integer key) {
+				// flipping the sign bit turns signed order into unsigned order
+				return key.longValue() ^ Long.MIN_VALUE;
+			}
+
+			public boolean isExact() {
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @return an exact normalizer for Longs in their natural order
+	 */
+	static KeyNormalizer<Long> longs() {
+		return new KeyNormalizer<Long>() {
+			public long prefix(Long key) {
+				return key ^ Long.MIN_VALUE;
+			}
+
+			public boolean isExact() {
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @return a normalizer for Strings in their natural order, whose prefix
+	 *         is the first four chars of the string, padded with zeros
+	 */
+	static KeyNormalizer<String> strings() {
+		return new KeyNormalizer<String>() {
+			public long prefix(String key) {
+				long prefix = 0;
+				int length = Math.min(4, key.length());
+				for (int i = 0; i < length; i++) {
+					prefix |= (long) key.charAt(i) << (48 - 16 * i);
+				}
+				return prefix;
+			}
+		};
+	}
+}
@@ -0,0 +1,131 @@
+package heap;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of non-negative long values, such as latencies in nanoseconds,
+ * in the style of an HDR histogram: every power of two is split into eight
+ * equal sub-buckets, so any recorded value is known to within 12.5% while the
+ * whole range of a long fits in 512 counters. Recording is O(1) and does not
+ * allocate.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+	private final long[] _counts;
+	private long _count;
+	private long _total;
+	private long _max;
+
+	/**
+	 * Creates an empty histogram.
+	 */
+	public LatencyHistogram() {
+		_counts = new long[BUCKETS];
+	}
+
+	/**
+	 * Creates a copy of the given histogram.
+	 */
+	public LatencyHistogram(LatencyHistogram other) {
+		_counts = other._counts.clone();
+		_count = other._count;
+		_total = other._total;
+		_max = other._max;
+	}
+
+	/**
+	 * Records one value; negative values are recorded as 0.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		_counts[bucket(value)]++;
+		_count++;
+		_total += value;
+		if (value > _max) {
+			_max = value;
+		}
+	}
+
+	/**
+	 * @return the number of values recorded
+	 */
+	public long getCount() {
+		return _count;
+	}
+
+	/**
+	 * @return the largest value recorded, 0 if none
+	 */
+	public long getMax() {
+		return _max;
+	}
+
+	/**
+	 * @return the mean of the values recorded, 0 if none
+	 */
+	public double getMean() {
+		return _count == 0 ? 0 : (double) _total / _count;
+	}
+
+	/**
+	 * Returns a value that at least the given percentage of the recorded
+	 * values do not exceed (the upper end of the bucket holding that
+	 * percentile, capped at the maximum).
+	 *
+	 * @param percentile
+	 *            between 0 and 100
+	 * @return the value at the percentile, 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (_count == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(percentile / 100 * _count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += _counts[i];
+			if (seen >= target) {
+				long next = lowestValue(i + 1);
+				return next == Long.MAX_VALUE ? _max : Math.min(_max, next - 1);
+			}
+		}
+		return _max;
+	}
+
+	/**
+	 * Forgets every recorded value.
+	 */
+	public void reset() {
+		Arrays.fill(_counts, 0);
+		_count = 0;
+		_total = 0;
+		_max = 0;
+	}
+
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long lowestValue(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		if (exponent > 62) {
+			return Long.MAX_VALUE;
+		}
+		long sub = bucket % SUB_BUCKETS;
+		return (1L << exponent) | (sub << (exponent - SUB_BITS));
+	}
+}
@@ -0,0 +1,343 @@
+package heap;
+
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * A concurrent, relaxed adaptable priority queue made of several MyHeap shards
+ * that each have their own lock (the "MultiQueue" design). Threads never line
+ * up on a single root:
+ *
+ * insert() adds the entry to a random shard whose lock is free.
+ *
+ * removeMin() samples a few random shards, looks at the minimum key each of
+ * them currently holds, and removes the minimum of the best one. The entry
+ * removed is therefore one of the smallest in the queue but not necessarily
+ * the smallest. The number of shards sampled is the strictness knob: 2 is the
+ * classic MultiQueue, and sampling every shard makes removeMin() exact as long
+ * as no other thread changes the queue at the same time.
+ *
+ * remove(), replaceKey() and replaceValue() lock only the shard that owns the
+ * entry, which every MyHeapEntry knows. min() is a relaxed, lock free peek at
+ * the shard minimums.
+ *
+ * All methods are safe to call from any thread.
+ */
+
+public class MultiQueueHeap<K, V> implements AdaptablePriorityQueue<K, V> {
+
+	// how many random shards insert() tries to lock without waiting
+	private static final int INSERT_ATTEMPTS = 4;
+	// how many failed rounds removeMin() samples before it scans every shard
+	// and waits for the lock of the best one
+	private static final int REMOVE_ATTEMPTS = 8;
+
+	private final Shard<K, V>[] _shards;
+	private final Map<MyHeap<K, V>, Shard<K, V>> _owners;
+	private final Comparator<K> _comparator;
+	private final int _choices;
+	private final AtomicInteger _size;
+
+	/**
+	 * Creates an empty queue with two shards per available processor that
+	 * samples two shards per removeMin().
+	 *
+	 * @param comparator
+	 *            the comparator to be used for heap keys
+	 */
+	public MultiQueueHeap(Comparator<K> comparator) {
+		this(comparator, 2 * Runtime.getRuntime().availableProcessors(), 2);
+	}
+
+	/**
+	 * Creates an empty queue.
+	 *
+	 * @param comparator
+	 *            the comparator to be used for heap keys
+	 * @param shards
+	 *            the number of internal heaps
+	 * @param choices
+	 *            the number of shards removeMin() compares, between 1 and
+	 *            shards; higher is stricter but slower
+	 * @throws IllegalArgumentException
+	 *             if shards is not positive or choices is not in 1..shards
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public MultiQueueHeap(Comparator<K> comparator, int shards, int choices) throws IllegalArgumentException {
+		if (shards < 1) {
+			throw new IllegalArgumentException("need at least one shard");
+		}
+		if (choices < 1 || choices > shards) {
+			throw new IllegalArgumentException("choices must be between 1 and the number of shards");
+		}
+		_shards = (Shard<K, V>[]) new Shard[shards];
+		_owners = new IdentityHashMap<MyHeap<K, V>, Shard<K, V>>();
+		for (int i = 0; i < shards; i++) {
+			_shards[i] = new Shard<K, V>(new MyHeap<K, V>(comparator));
+			_owners.put(_shards[i]._heap, _shards[i]);
+		}
+		_comparator = comparator;
+		_choices = choices;
+		_size = new AtomicInteger();
+	}
+
+	/**
+	 * Returns the number of entries in the queue. This method runs in O(1)
+	 * time.
+	 */
+	public int size() {
+		return _size.get();
+	}
+
+	/**
+	 * Returns whether the queue is empty. This method runs in O(1) time.
+	 */
+	public boolean isEmpty() {
+		return _size.get() == 0;
+	}
+
+	/**
+	 * Returns but does not remove the entry with the smallest key among the
+	 * shard minimums, without taking any lock. Concurrent updates may make the
+	 * answer stale by the time it is returned. This method runs in O(shards)
+	 * time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the queue is empty
+	 */
+	public Entry<K, V> min() throws EmptyPriorityQueueException {
+		Entry<K, V> best = null;
+		for (Shard<K, V> shard : _shards) {
+			Entry<K, V> top = shard._top;
+			if (top != null && (best == null || _comparator.compare(top.getKey(), best.getKey()) < 0)) {
+				best = top;
+			}
+		}
+		if (best == null) {
+			throw new EmptyPriorityQueueException("heap is empty");
+		}
+		return best;
+	}
+
+	/**
+	 * Inserts a key-value pair into a random shard and returns the entry
+	 * created. This method runs in O(log n) time.
+	 *
+	 * @throws InvalidKeyException
+	 *             if the key is not suitable for this heap
+	 */
+	public Entry<K, V> insert(K key, V value) throws InvalidKeyException {
+		MyHeap.checkKey(key);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		Shard<K, V> shard = null;
+		for (int attempt = 0; attempt < INSERT_ATTEMPTS && shard == null; attempt++) {
+			Shard<K, V> candidate = _shards[random.nextInt(_shards.length)];
+			if (candidate._lock.tryLock()) {
+				shard = candidate;
+			}
+		}
+		if (shard == null) {
+			// every shard tried was busy, wait for one of them
+			shard = _shards[random.nextInt(_shards.length)];
+			shard._lock.lock();
+		}
+		try {
+			Entry<K, V> entry = shard._heap.insert(key, value);
+			_size.incrementAndGet();
+			shard.updateTop();
+			return entry;
+		} finally {
+			shard._lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes and returns the minimum of the best of the sampled shards. A
+	 * round that finds the best shard locked or emptied by another thread
+	 * spins briefly and samples again; after REMOVE_ATTEMPTS such rounds the
+	 * best of all shards is taken and its lock waited for, so a thread cannot
+	 * keep losing to the others. This method runs in O(choices + log n)
+	 * expected time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the queue is empty
+	 */
+	public Entry<K, V> removeMin() throws EmptyPriorityQueueException {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int failures = 0; !isEmpty(); failures++) {
+			boolean scan = failures >= REMOVE_ATTEMPTS;
+			Shard<K, V> best = null;
+			if (_choices == _shards.length || scan) {
+				best = bestOf(_shards, 0, _shards.length, null);
+			} else {
+				for (int i = 0; i < _choices; i++) {
+					best = bestOf(_shards, random.nextInt(_shards.length), 1, best);
+				}
+				if (best == null) {
+					// the sampled shards were all empty, fall back to a full scan
+					best = bestOf(_shards, 0, _shards.length, null);
+				}
+			}
+
+			// a busy shard is someone else's problem, sample again, unless
+			// this thread has lost often enough to wait its turn
+			if (best != null) {
+				if (scan) {
+					best._lock.lock();
+				}
+				if (scan || best._lock.tryLock()) {
+					try {
+						if (!best._heap.isEmpty()) {
+							Entry<K, V> entry = best._heap.removeMin();
+							_size.decrementAndGet();
+							best.updateTop();
+							return entry;
+						}
+					} finally {
+						best._lock.unlock();
+					}
+				}
+			}
+			Thread.onSpinWait();
+		}
+		throw new EmptyPriorityQueueException("heap is empty");
+	}
+
+	/**
+	 * Removes and returns the given entry from the shard that holds it. This
+	 * method runs in O(log n) time.
+	 *
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this queue
+	 */
+	public Entry<K, V> remove(Entry<K, V> entry) throws InvalidEntryException {
+		MyHeapEntry<K, V> checkedEntry = checkAndConvertEntry(entry);
+		Shard<K, V> shard = lockOwner(checkedEntry);
+		try {
+			Entry<K, V> removed = shard._heap.remove(checkedEntry);
+			_size.decrementAndGet();
+			shard.updateTop();
+			return removed;
+		} finally {
+			shard._lock.unlock();
+		}
+	}
+
+	/**
+	 * Replaces the key of the given entry within the shard that holds it. This
+	 * method runs in O(log n) time.
+	 *
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this queue
+	 * @throws InvalidKeyException
+	 *             if the key is not suitable for this heap
+	 */
+	public K replaceKey(Entry<K, V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		MyHeapEntry<K, V> checkedEntry = checkAndConvertEntry(entry);
+		Shard<K, V> shard = lockOwner(checkedEntry);
+		try {
+			K oldKey = shard._heap.replaceKey(checkedEntry, key);
+			shard.updateTop();
+			return oldKey;
+		} finally {
+			shard._lock.unlock();
+		}
+	}
+
+	/**
+	 * Replaces the value of the given entry. This method runs in O(1) time.
+	 *
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this queue
+	 */
+	public V replaceValue(Entry<K, V> entry, V value) throws InvalidEntryException {
+		MyHeapEntry<K, V> checkedEntry = checkAndConvertEntry(entry);
+		Shard<K, V> shard = lockOwner(checkedEntry);
+		try {
+			return shard._heap.replaceValue(checkedEntry, value);
+		} finally {
+			shard._lock.unlock();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private MyHeapEntry<K, V> checkAndConvertEntry(Entry<K, V> entry) throws InvalidEntryException {
+		if (!(entry instanceof MyHeapEntry)) {
+			throw new InvalidEntryException("Invalid entry");
+		}
+		return (MyHeapEntry<K, V>) entry;
+	}
+
+	/**
+	 * Locks the shard that holds the entry and returns it, still locked.
+	 * Entries never move between shards, so the owner read before locking is
+	 * only checked again once the lock is held.
+	 *
+	 * @throws InvalidEntryException
+	 *             if the entry is not in one of this queue's shards
+	 */
+	private Shard<K, V> lockOwner(MyHeapEntry<K, V> entry) throws InvalidEntryException {
+		MyHeap<K, V> owner = entry.get_heap();
+		Shard<K, V> shard = owner == null ? null : _owners.get(owner);
+		if (shard == null) {
+			throw new InvalidEntryException("entry not in heap");
+		}
+		shard._lock.lock();
+		if (entry.get_heap() != owner) {
+			shard._lock.unlock();
+			throw new InvalidEntryException("entry not in heap");
+		}
+		return shard;
+	}
+
+	/**
+	 * Returns whichever of best and the shards in [from, from + count) has the
+	 * smallest current minimum, ignoring empty shards.
+	 */
+	private Shard<K, V> bestOf(Shard<K, V>[] shards, int from, int count, Shard<K, V> best) {
+		Entry<K, V> bestTop = best == null ? null : best._top;
+		for (int i = from; i < from + count; i++) {
+			Entry<K, V> top = shards[i]._top;
+			if (top != null && (bestTop == null || _comparator.compare(top.getKey(), bestTop.getKey()) < 0)) {
+				best = shards[i];
+				bestTop = top;
+			}
+		}
+		return best;
+	}
+
+	/*
+	 * One internal heap with its lock. The shard's minimum is published in a
+	 * volatile field so that other threads can compare shards without locking.
+	 */
+	private static class Shard<K, V> {
+
+		private final MyHeap<K, V> _heap;
+		private final ReentrantLock _lock;
+		private volatile Entry<K, V> _top;
+
+		private Shard(MyHeap<K, V> heap) {
+			_heap = heap;
+			_lock = new ReentrantLock();
+		}
+
+		/**
+		 * publishes the current minimum, must be called with the lock held
+		 */
+		private void updateTop() {
+			_top = _heap.isEmpty() ? null : _heap.min();
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+
+/**
+ * Tests the functionality of MultiQueueHeap, both from a single thread, where
+ * sampling every shard gives exact ordering, and from several threads at once.
+ */
+public class MultiQueueHeapTest {
+
+	@Test
+	public void testStrictRemoveMinHeapOrder() {
+		MultiQueueHeap<Integer, String> heap = new MultiQueueHeap<Integer, String>(new IntegerComparator(), 4, 4);
+		heap.insert(11, "A");
+		heap.insert(13, "B");
+		heap.insert(64, "C");
+		heap.insert(16, "D");
+		heap.insert(44, "E");
+
+		assertThat(heap.min().getKey(), is(11));
+		List<Integer> actualKeys = new ArrayList<Integer>();
+		while (!heap.isEmpty()) {
+			actualKeys.add(heap.removeMin().getKey());
+		}
+		assertThat(actualKeys, is(Arrays.asList(11, 13, 16, 44, 64)));
+	}
+
+	@Test(expected = EmptyPriorityQueueException.class)
+	public void testRemoveMinThrowsEmptyPriorityQueueException() {
+		MultiQueueHeap<Integer, String> heap = new MultiQueueHeap<Integer, String>(new IntegerComparator());
+		heap.removeMin();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructorThrowsIllegalArgumentException() {
+		new MultiQueueHeap<Integer, String>(new IntegerComparator(), 2, 3);
+	}
+
+	@Test
+	public void testReplaceKeyAndRemoveRouteToOwningShard() {
+		MultiQueueHeap<Integer, String> heap = new MultiQueueHeap<Integer, String>(new IntegerComparator(), 8, 8);
+		List<Entry<Integer, String>> entries = new ArrayList<Entry<Integer, String>>();
+		for (int key = 50; key < 70; key++) {
+			entries.add(heap.insert(key, "v" + key));
+		}
+
+		heap.replaceKey(entries.get(19), 1);
+		assertEquals("v50", heap.replaceValue(entries.get(0), "first"));
+		assertEquals(entries.get(5), heap.remove(entries.get(5)));
+		assertEquals(19, heap.size());
+
+		assertEquals(entries.get(19), heap.removeMin());
+		assertThat(heap.removeMin().getValue(), is("first"));
+	}
+
+	@Test(expected = InvalidEntryException.class)
+	public void testRemoveForeignEntryThrowsInvalidEntryException() {
+		MultiQueueHeap<Integer, String> heap = new MultiQueueHeap<Integer, String>(new IntegerComparator());
+		MyHeap<Integer, String> other = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.remove(other.insert(1, "A"));
+	}
+
+	/*
+	 * Several threads insert and then drain the queue at the same time, every
+	 * entry has to come out exactly once.
+	 */
+	@Test
+	public void testConcurrentInsertAndRemoveMin() throws InterruptedException {
+		final MultiQueueHeap<Integer, Integer> heap = new MultiQueueHeap<Integer, Integer>(new IntegerComparator(), 8,
+				2);
+		final ConcurrentLinkedQueue<Integer> removed = new ConcurrentLinkedQueue<Integer>();
+		final int threads = 4;
+		final int perThread = 2000;
+
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final int offset = t * perThread;
+			workers.add(new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < perThread; i++) {
+						heap.insert(1 + (i % 99), offset + i);
+					}
+					for (int i = 0; i < perThread; i++) {
+						removed.add(heap.removeMin().getValue());
+					}
+				}
+			}));
+		}
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		assertTrue(heap.isEmpty());
+		List<Integer> values = new ArrayList<Integer>(removed);
+		Collections.sort(values);
+		assertEquals(threads * perThread, values.size());
+		for (int i = 0; i < values.size(); i++) {
+			assertEquals(i, (int) values.get(i));
+		}
+	}
+
+	/*
+	 * With a single shard every thread but one loses each round, so the
+	 * losers end up waiting for the lock instead of sampling forever.
+	 */
+	@Test
+	public void testContendedShardIsDrained() throws InterruptedException {
+		final MultiQueueHeap<Integer, Integer> heap = new MultiQueueHeap<Integer, Integer>(new IntegerComparator(), 1,
+				1);
+		final int count = 8000;
+		for (int i = 0; i < count; i++) {
+			heap.insert(1 + (i % 99), i);
+		}
+		final ConcurrentLinkedQueue<Integer> removed = new ConcurrentLinkedQueue<Integer>();
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			workers.add(new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < count / 8; i++) {
+						removed.add(heap.removeMin().getValue());
+					}
+				}
+			}));
+		}
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		assertTrue(heap.isEmpty());
+		assertEquals(count, new HashSet<Integer>(removed).size());
+	}
+
+}
@@ -0,0 +1,257 @@
+package heap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import net.datastructures.BoundaryViolationException;
+import net.datastructures.CompleteBinaryTree;
+import net.datastructures.EmptyTreeException;
+import net.datastructures.InvalidPositionException;
+import net.datastructures.Position;
+
+/**
+ * An implementation of a complete binary tree by means of a growable array.
+ * Unlike MyLinkedHeapTree, there are no parent/left/right links: the node at
+ * index i has its parent at (i - 1) / 2 and its children at 2i + 1 and 2i + 2,
+ * so walking the tree is plain index arithmetic over one contiguous array.
+ *
+ * Every slot holds a small position object that knows its own index, which is
+ * what lets a MyHeapEntry stay position aware exactly as it does with the
+ * linked tree. Because of this the tree can be handed to MyHeap in place of a
+ * MyLinkedHeapTree without any change to the heap code.
+ *
+ * A position belongs to its slot for good: it is created the first time the
+ * slot is filled, stays in the array when remove() empties the slot, and is
+ * handed out again by the next add() that fills it. A tree that grows and
+ * shrinks therefore only allocates while it reaches a new largest size, the
+ * positions of neighbouring slots were allocated one after the other, and
+ * checking a position on every parent/left/right call is one bounds check and
+ * one identity check against its slot. A removed position is rejected until
+ * its slot is filled again, after which it stands for the new node.
+ *
+ * add() and remove() run in O(1) amortized time (the array doubles when full),
+ * every other operation runs in O(1) time.
+ */
+
+public class MyArrayHeapTree<E> implements CompleteBinaryTree<E> {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private ArrayPosition<E>[] _slots;
+	private int _size;
+
+	/**
+	 * Default constructor. The tree begins empty.
+	 */
+	public MyArrayHeapTree() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty tree whose array can hold the given number of nodes
+	 * before it has to grow.
+	 *
+	 * @param capacity
+	 *            the initial number of slots
+	 * @throws IllegalArgumentException
+	 *             if capacity is not positive
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public MyArrayHeapTree(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		_slots = (ArrayPosition<E>[]) new ArrayPosition[capacity];
+		_size = 0;
+	}
+
+	/**
+	 * Adds an element to the tree just after the last node. Returns the newly
+	 * created position for the element.
+	 *
+	 * This method runs in O(1) amortized time.
+	 *
+	 * @param element
+	 *            to be added to the tree as the new last node
+	 * @return the Position of the newly inserted element
+	 */
+	@Override
+	public Position<E> add(E element) {
+		if (_size == _slots.length) {
+			_slots = Arrays.copyOf(_slots, _size * 2);
+		}
+		ArrayPosition<E> position = _slots[_size];
+		if (position == null) {
+			position = new ArrayPosition<E>(_size);
+			_slots[_size] = position;
+		}
+		position._element = element;
+		_size++;
+		return position;
+	}
+
+	/**
+	 * Removes and returns the element stored in the last node of the tree.
+	 *
+	 * This method runs in O(1) time.
+	 *
+	 * @return the element formerly stored in the last node (prior to its
+	 *         removal)
+	 * @throws EmptyTreeException
+	 *             if the tree is empty and no last node exists
+	 */
+	@Override
+	public E remove() throws EmptyTreeException {
+		if (isEmpty()) {
+			throw new EmptyTreeException("You can not remove when the tree is empty");
+		}
+		// the position stays in its slot for the next add(), it is no longer
+		// accepted because its index is now past the end of the tree
+		ArrayPosition<E> last = _slots[--_size];
+		E element = last._element;
+		last._element = null;
+		return element;
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	public Position<E> root() throws EmptyTreeException {
+		if (isEmpty()) {
+			throw new EmptyTreeException("The tree has no root");
+		}
+		return _slots[0];
+	}
+
+	public Position<E> parent(Position<E> v) throws InvalidPositionException, BoundaryViolationException {
+		int index = checkPosition(v);
+		if (index == 0) {
+			throw new BoundaryViolationException("No parent");
+		}
+		return _slots[(index - 1) / 2];
+	}
+
+	public Position<E> left(Position<E> v) throws InvalidPositionException, BoundaryViolationException {
+		int child = 2 * checkPosition(v) + 1;
+		if (child >= _size) {
+			throw new BoundaryViolationException("No left child");
+		}
+		return _slots[child];
+	}
+
+	public Position<E> right(Position<E> v) throws InvalidPositionException, BoundaryViolationException {
+		int child = 2 * checkPosition(v) + 2;
+		if (child >= _size) {
+			throw new BoundaryViolationException("No right child");
+		}
+		return _slots[child];
+	}
+
+	public boolean hasLeft(Position<E> v) throws InvalidPositionException {
+		return 2 * checkPosition(v) + 1 < _size;
+	}
+
+	public boolean hasRight(Position<E> v) throws InvalidPositionException {
+		return 2 * checkPosition(v) + 2 < _size;
+	}
+
+	public boolean isRoot(Position<E> v) throws InvalidPositionException {
+		return checkPosition(v) == 0;
+	}
+
+	public boolean isInternal(Position<E> v) throws InvalidPositionException {
+		return hasLeft(v);
+	}
+
+	public boolean isExternal(Position<E> v) throws InvalidPositionException {
+		return !hasLeft(v);
+	}
+
+	public Iterable<Position<E>> children(Position<E> v) throws InvalidPositionException {
+		List<Position<E>> children = new ArrayList<Position<E>>(2);
+		if (hasLeft(v)) {
+			children.add(left(v));
+		}
+		if (hasRight(v)) {
+			children.add(right(v));
+		}
+		return children;
+	}
+
+	/*
+	 * positions and elements are both reported in level order, which for this
+	 * tree is simply array order
+	 */
+
+	public Iterable<Position<E>> positions() {
+		List<Position<E>> positions = new ArrayList<Position<E>>(_size);
+		for (int i = 0; i < _size; i++) {
+			positions.add(_slots[i]);
+		}
+		return positions;
+	}
+
+	public Iterator<E> iterator() {
+		List<E> elements = new ArrayList<E>(_size);
+		for (int i = 0; i < _size; i++) {
+			elements.add(_slots[i]._element);
+		}
+		return elements.iterator();
+	}
+
+	public E replace(Position<E> v, E element) throws InvalidPositionException {
+		checkPosition(v);
+		ArrayPosition<E> position = (ArrayPosition<E>) v;
+		E old = position._element;
+		position._element = element;
+		return old;
+	}
+
+	/*
+	 * getter of the last position of the tree, for use in MyHeap class
+	 */
+	public Position<E> getLastPosition() {
+		return isEmpty() ? null : _slots[_size - 1];
+	}
+
+	/**
+	 * Makes sure the given position is a live node of this tree and returns
+	 * its index.
+	 */
+	private int checkPosition(Position<E> v) throws InvalidPositionException {
+		if (v instanceof ArrayPosition) {
+			int index = ((ArrayPosition<E>) v)._index;
+			// positions never change slots, so only one of another tree or of
+			// a removed node can fail here
+			if (index < _size && _slots[index] == v) {
+				return index;
+			}
+		}
+		throw new InvalidPositionException("The position is invalid");
+	}
+
+	/*
+	 * A node of the array tree. It only records the element and the slot it
+	 * lives in, the structure of the tree is implied by the index.
+	 */
+	private static class ArrayPosition<E> implements Position<E> {
+
+		private final int _index;
+		private E _element;
+
+		private ArrayPosition(int index) {
+			_index = index;
+		}
+
+		public E element() {
+			return _element;
+		}
+	}
+}
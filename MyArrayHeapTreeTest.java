@@ -0,0 +1,134 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyTreeException;
+import net.datastructures.InvalidPositionException;
+import net.datastructures.Position;
+
+/**
+ * Tests the functionality of the array backed MyArrayHeapTree, and that a
+ * MyHeap built on top of it behaves the same as one built on MyLinkedHeapTree.
+ */
+public class MyArrayHeapTreeTest {
+
+	@Test
+	public void testAddOneElement() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		tree.add(1);
+
+		assertThat(tree.size(), is(1));
+		assertThat(tree.root().element(), is(1));
+	}
+
+	@Test(expected = EmptyTreeException.class)
+	public void testRemoveThrowsEmptyTreeException() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		tree.remove();
+	}
+
+	/*
+	 * Adds enough elements to force the array to grow and checks the parent
+	 * and child relationships implied by the indices.
+	 */
+	@Test()
+	public void testAddGrowsAndLinksNodes() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>(1);
+		List<Position<Integer>> positions = new ArrayList<Position<Integer>>();
+		for (int i = 0; i < 10; i++) {
+			positions.add(tree.add(i));
+		}
+
+		assertThat(tree.size(), is(10));
+		assertTrue(tree.isRoot(positions.get(0)));
+		assertEquals(positions.get(1), tree.left(positions.get(0)));
+		assertEquals(positions.get(2), tree.right(positions.get(0)));
+		assertEquals(positions.get(4), tree.right(positions.get(1)));
+		assertEquals(positions.get(3), tree.parent(positions.get(8)));
+		assertTrue(tree.hasLeft(positions.get(4)));
+		assertFalse(tree.hasRight(positions.get(4)));
+		assertTrue(tree.isExternal(positions.get(5)));
+		assertEquals(positions.get(9), tree.getLastPosition());
+	}
+
+	/*
+	 * A slot keeps its position: the next add() after a remove() hands out the
+	 * same position, now holding the new element.
+	 */
+	@Test()
+	public void testAddReusesPositionOfSlot() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		Position<Integer> root = tree.add(1);
+		Position<Integer> left = tree.add(2);
+		assertEquals(2, (int) tree.remove());
+		assertFalse(tree.hasLeft(root));
+
+		assertTrue(tree.add(3) == left);
+		assertThat(left.element(), is(3));
+		assertEquals(left, tree.left(root));
+		assertEquals(root, tree.parent(left));
+	}
+
+	/*
+	 * Test that the remove method removes from the last node in the tree and
+	 * that removed positions are no longer accepted
+	 */
+	@Test()
+	public void testRemove() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+
+		tree.add(24);
+		Position<Integer> last = tree.add(16);
+		assertEquals(16, (int) tree.remove());
+		assertEquals(24, (int) tree.remove());
+		assertTrue(tree.isEmpty());
+
+		try {
+			tree.parent(last);
+			fail("removed position should be invalid");
+		} catch (InvalidPositionException e) {
+		}
+	}
+
+	@Test()
+	public void testReplace() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		Position<Integer> root = tree.add(5);
+		tree.add(7);
+
+		assertEquals(5, (int) tree.replace(root, 3));
+		assertEquals(3, (int) tree.root().element());
+	}
+
+	@Test()
+	public void testHeapOnArrayTree() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(),
+				new MyArrayHeapTree<MyHeapEntry<Integer, String>>());
+		heap.insert(11, "A");
+		heap.insert(13, "B");
+		heap.insert(64, "C");
+		heap.insert(16, "D");
+		heap.insert(44, "E");
+
+		List<Integer> actualKeys = new ArrayList<Integer>();
+		while (!heap.isEmpty()) {
+			actualKeys.add(heap.removeMin().getKey());
+		}
+		assertThat(actualKeys, is(Arrays.asList(11, 13, 16, 44, 64)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testHeapRejectsNonEmptyTree() {
+		MyArrayHeapTree<MyHeapEntry<Integer, String>> tree = new MyArrayHeapTree<MyHeapEntry<Integer, String>>();
+		tree.add(new MyHeapEntry<Integer, String>(1, "A"));
+		new MyHeap<Integer, String>(new IntegerComparator(), tree);
+	}
+
+}
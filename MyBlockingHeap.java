@@ -0,0 +1,262 @@
+package heap;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * A thread safe, blocking facade over a MyHeap in the style of a
+ * java.util.concurrent.BlockingQueue. Consumers call take() or poll(timeout)
+ * and sleep until an entry is available instead of spinning on isEmpty() and
+ * removeMin(); every put() wakes exactly one waiting consumer, which then takes
+ * the entry with the minimum key.
+ *
+ * All waiting is done on a Condition of a ReentrantLock, never inside a
+ * synchronized block, so a waiting virtual thread is parked and releases its
+ * carrier thread. The heap is unbounded, so put() never blocks.
+ *
+ * Entries handed out are the MyHeap's own entries and can be passed back to
+ * remove(), replaceKey() and replaceValue() from any thread.
+ */
+
+public class MyBlockingHeap<K, V> implements AdaptablePriorityQueue<K, V> {
+
+	private final MyHeap<K, V> _heap;
+	private final ReentrantLock _lock;
+	private final Condition _notEmpty;
+
+	/**
+	 * Creates an empty blocking heap with the given comparator.
+	 *
+	 * @param comparator
+	 *            the comparator to be used for heap keys
+	 */
+	public MyBlockingHeap(Comparator<K> comparator) {
+		this(new MyHeap<K, V>(comparator));
+	}
+
+	/**
+	 * Creates a blocking heap over the given heap, which must from now on only
+	 * be used through this facade.
+	 *
+	 * @param heap
+	 *            the heap to guard
+	 * @throws IllegalArgumentException
+	 *             if heap is null
+	 */
+	public MyBlockingHeap(MyHeap<K, V> heap) throws IllegalArgumentException {
+		if (heap == null) {
+			throw new IllegalArgumentException("null heap");
+		}
+		_heap = heap;
+		_lock = new ReentrantLock();
+		_notEmpty = _lock.newCondition();
+	}
+
+	/**
+	 * Inserts a key-value pair, wakes one waiting consumer and returns the
+	 * entry created. Never blocks. This method runs in O(log n) time.
+	 *
+	 * @throws InvalidKeyException
+	 *             if the key is not suitable for this heap
+	 */
+	public Entry<K, V> put(K key, V value) throws InvalidKeyException {
+		_lock.lock();
+		try {
+			Entry<K, V> entry = _heap.insert(key, value);
+			_notEmpty.signal();
+			return entry;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Same as put().
+	 */
+	public Entry<K, V> insert(K key, V value) throws InvalidKeyException {
+		return put(key, value);
+	}
+
+	/**
+	 * Removes and returns the entry with the minimum key, waiting for one to
+	 * be inserted if the heap is empty.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public Entry<K, V> take() throws InterruptedException {
+		_lock.lockInterruptibly();
+		try {
+			while (_heap.isEmpty()) {
+				_notEmpty.await();
+			}
+			return removeMinAndPassOn();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes and returns the entry with the minimum key, or returns null
+	 * straight away if the heap is empty.
+	 */
+	public Entry<K, V> poll() {
+		_lock.lock();
+		try {
+			return _heap.isEmpty() ? null : removeMinAndPassOn();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes and returns the entry with the minimum key, waiting up to the
+	 * given time for one to be inserted if the heap is empty.
+	 *
+	 * @return the entry, or null if the time ran out first
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public Entry<K, V> poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		_lock.lockInterruptibly();
+		try {
+			while (_heap.isEmpty()) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = _notEmpty.awaitNanos(nanos);
+			}
+			return removeMinAndPassOn();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes every entry, smallest key first, and adds it to the given
+	 * collection. Never blocks.
+	 *
+	 * @return the number of entries removed
+	 */
+	public int drainTo(Collection<? super Entry<K, V>> collection) {
+		return drainTo(collection, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Removes at most the given number of entries, smallest key first, and
+	 * adds them to the given collection. Never blocks.
+	 *
+	 * @return the number of entries removed
+	 * @throws IllegalArgumentException
+	 *             if maxEntries is negative
+	 */
+	public int drainTo(Collection<? super Entry<K, V>> collection, int maxEntries) throws IllegalArgumentException {
+		_lock.lock();
+		try {
+			int drained = _heap.drainTo(collection, maxEntries);
+			if (!_heap.isEmpty()) {
+				_notEmpty.signal();
+			}
+			return drained;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public int size() {
+		_lock.lock();
+		try {
+			return _heap.size();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Returns but does not remove an entry with minimum key, without waiting.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the heap is empty
+	 */
+	public Entry<K, V> min() throws EmptyPriorityQueueException {
+		_lock.lock();
+		try {
+			return _heap.min();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes and returns an entry with minimum key, without waiting.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the heap is empty
+	 */
+	public Entry<K, V> removeMin() throws EmptyPriorityQueueException {
+		_lock.lock();
+		try {
+			if (_heap.isEmpty()) {
+				throw new EmptyPriorityQueueException("heap is empty");
+			}
+			return removeMinAndPassOn();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public Entry<K, V> remove(Entry<K, V> entry) throws InvalidEntryException {
+		_lock.lock();
+		try {
+			return _heap.remove(entry);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public K replaceKey(Entry<K, V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		_lock.lock();
+		try {
+			return _heap.replaceKey(entry, key);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public V replaceValue(Entry<K, V> entry, V value) throws InvalidEntryException {
+		_lock.lock();
+		try {
+			return _heap.replaceValue(entry, value);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the minimum of the non-empty heap. If entries are left, the
+	 * wakeup is passed on to the next waiter, so a signal that was consumed by
+	 * a thread that then timed out or was interrupted is never lost. Must be
+	 * called with the lock held.
+	 */
+	private Entry<K, V> removeMinAndPassOn() {
+		Entry<K, V> entry = _heap.removeMin();
+		if (!_heap.isEmpty()) {
+			_notEmpty.signal();
+		}
+		return entry;
+	}
+}
@@ -0,0 +1,80 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import net.datastructures.Entry;
+
+/**
+ * Tests the functionality of MyBlockingHeap, in particular that consumers wait
+ * for entries instead of failing.
+ */
+public class MyBlockingHeapTest {
+
+	@Test
+	public void testPollOnEmptyHeap() throws InterruptedException {
+		MyBlockingHeap<Integer, String> heap = new MyBlockingHeap<Integer, String>(new IntegerComparator());
+		assertNull(heap.poll());
+		assertNull(heap.poll(10, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testTakeInKeyOrder() throws InterruptedException {
+		MyBlockingHeap<Integer, String> heap = new MyBlockingHeap<Integer, String>(new IntegerComparator());
+		heap.put(44, "B");
+		heap.put(11, "A");
+		heap.put(64, "C");
+
+		assertThat(heap.take().getValue(), is("A"));
+		assertThat(heap.poll(1, TimeUnit.SECONDS).getValue(), is("B"));
+		assertThat(heap.poll().getValue(), is("C"));
+		assertTrue(heap.isEmpty());
+	}
+
+	/*
+	 * A consumer blocked in take() is woken by the next put().
+	 */
+	@Test
+	public void testTakeWaitsForPut() throws InterruptedException {
+		final MyBlockingHeap<Integer, String> heap = new MyBlockingHeap<Integer, String>(new IntegerComparator());
+		final AtomicReference<Entry<Integer, String>> taken = new AtomicReference<Entry<Integer, String>>();
+		Thread consumer = new Thread(new Runnable() {
+			public void run() {
+				try {
+					taken.set(heap.take());
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		consumer.start();
+
+		Thread.sleep(50);
+		assertNull(taken.get());
+		Entry<Integer, String> entry = heap.put(7, "A");
+		consumer.join(5000);
+		assertFalse(consumer.isAlive());
+		assertEquals(entry, taken.get());
+	}
+
+	@Test
+	public void testDrainTo() {
+		MyBlockingHeap<Integer, String> heap = new MyBlockingHeap<Integer, String>(new IntegerComparator());
+		heap.put(3, "C");
+		heap.put(1, "A");
+		heap.put(2, "B");
+
+		List<Entry<Integer, String>> drained = new ArrayList<Entry<Integer, String>>();
+		assertEquals(2, heap.drainTo(drained, 2));
+		assertEquals(1, heap.drainTo(drained));
+		assertThat(drained.get(0).getValue(), is("A"));
+		assertThat(drained.get(2).getValue(), is("C"));
+	}
+
+}
@@ -0,0 +1,181 @@
+package heap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import net.datastructures.Entry;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * A MyHeap with a fixed capacity that keeps the "best" entries of a stream:
+ * the ones with the largest keys according to the comparator (use a reversed
+ * comparator to keep the smallest). The root of the heap is therefore the
+ * worst entry kept, and once the heap is full a new entry is either rejected,
+ * if its key is not larger than the root's, or takes the root's place and is
+ * sorted down, evicting the old root, in O(log K) time.
+ *
+ * The entries are stored in a MyArrayHeapTree sized to the capacity up front.
+ * An eviction reuses the root's node, so once the heap is full the tree never
+ * grows, shrinks or allocates. A rejected key creates nothing: it is answered
+ * with the shared rejected() entry, which is not a MyHeapEntry, so no heap
+ * accepts it as a handle or for release(). New entries come from MyHeap's
+ * recycling pool when setRecycling() is on. Like any removed entry, an
+ * evicted one only goes back to the pool through release(): offer() hands it
+ * to the caller for that, while insert() and merge() leave it to the
+ * collector, since some caller may still hold it as a handle.
+ *
+ * Apart from insert() and merge(), every MyHeap operation works as usual, so
+ * kept entries can be removed or given new keys through their handles.
+ */
+
+public class MyBoundedHeap<K, V> extends MyHeap<K, V> {
+
+	// the entry returned for every rejected pair, it holds no key or value
+	private static final Entry<Object, Object> REJECTED = new Entry<Object, Object>() {
+		public Object getKey() {
+			return null;
+		}
+
+		public Object getValue() {
+			return null;
+		}
+	};
+
+	private final int _capacity;
+
+	/**
+	 * Creates an empty heap that keeps at most the given number of entries.
+	 *
+	 * @param comparator
+	 *            the comparator to be used for heap keys
+	 * @param capacity
+	 *            the number of entries kept
+	 * @throws IllegalArgumentException
+	 *             if capacity is not positive
+	 */
+	public MyBoundedHeap(Comparator<K> comparator, int capacity) throws IllegalArgumentException {
+		super(comparator, new MyArrayHeapTree<MyHeapEntry<K, V>>(checkCapacity(capacity)));
+		_capacity = capacity;
+	}
+
+	/**
+	 * Returns the entry handed out for pairs that were rejected, which is
+	 * shared by all bounded heaps, has a null key and value and is not in any
+	 * heap. Compare with == to tell whether a pair was kept.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <K, V> Entry<K, V> rejected() {
+		return (Entry<K, V>) REJECTED;
+	}
+
+	/**
+	 * @return the number of entries this heap keeps
+	 */
+	public int getCapacity() {
+		return _capacity;
+	}
+
+	/**
+	 * @return whether the heap holds as many entries as it keeps
+	 */
+	public boolean isFull() {
+		return size() >= _capacity;
+	}
+
+	/**
+	 * Offers a key-value pair to the heap. If the heap has room the pair is
+	 * added. Otherwise, if its key is larger than the smallest key kept, the
+	 * entry with the smallest key is evicted and the pair takes its place, and
+	 * if not the pair is rejected. This method runs in O(log K) time.
+	 *
+	 * @return null if the pair was added to a heap with room, the evicted
+	 *         entry, which the caller may release() once done with it, or
+	 *         rejected() if the pair was rejected
+	 * @throws InvalidKeyException
+	 *             if the key is not suitable for this heap
+	 */
+	public Entry<K, V> offer(K key, V value) throws InvalidKeyException {
+		if (!isFull()) {
+			super.insert(key, value);
+			return null;
+		}
+		checkKey(key);
+		if (compareKeys(key, min().getKey()) <= 0) {
+			return rejected();
+		}
+		return replaceMin(newEntry(key, value));
+	}
+
+	/**
+	 * Adds a key-value pair like offer() and returns its entry, or returns
+	 * rejected() if the heap is full and the key is not larger than the
+	 * smallest key kept. An entry evicted to make room is dropped, never
+	 * recycled. This method runs in O(log K) time.
+	 *
+	 * @throws InvalidKeyException
+	 *             if the key is not suitable for this heap
+	 */
+	@Override
+	public Entry<K, V> insert(K key, V value) throws InvalidKeyException {
+		if (!isFull()) {
+			return super.insert(key, value);
+		}
+		checkKey(key);
+		if (compareKeys(key, min().getKey()) <= 0) {
+			return rejected();
+		}
+		MyHeapEntry<K, V> entry = newEntry(key, value);
+		replaceMin(entry);
+		return entry;
+	}
+
+	/**
+	 * Adds each of the pairs with insert(), in order.
+	 *
+	 * @return the entries created, in the same order as the pairs, with
+	 *         rejected() for every pair that was rejected
+	 * @throws InvalidKeyException
+	 *             if any of the keys is not suitable for this heap, in which
+	 *             case no pair is added
+	 */
+	@Override
+	public List<Entry<K, V>> insertAll(Collection<? extends Entry<K, V>> entries) throws InvalidKeyException {
+		for (Entry<K, V> pair : entries) {
+			checkKey(pair.getKey());
+		}
+		List<Entry<K, V>> created = new ArrayList<Entry<K, V>>(entries.size());
+		for (Entry<K, V> pair : entries) {
+			created.add(insert(pair.getKey(), pair.getValue()));
+		}
+		return created;
+	}
+
+	/**
+	 * Moves every entry of the other heap into this one like MyHeap.merge(),
+	 * then evicts the entries with the smallest keys until the heap is back
+	 * within its capacity. The entries kept, from either heap, stay valid;
+	 * the evicted ones are dropped. This method runs in O(n + m) time plus
+	 * O(log(n + m)) time per eviction.
+	 *
+	 * @param other
+	 *            the heap to empty into this one
+	 * @throws IllegalArgumentException
+	 *             if other is null or this heap
+	 */
+	@Override
+	public void merge(MyHeap<K, V> other) throws IllegalArgumentException {
+		super.merge(other);
+		while (size() > _capacity) {
+			removeMin();
+		}
+	}
+
+	private static int checkCapacity(int capacity) throws IllegalArgumentException {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		return capacity;
+	}
+}
@@ -0,0 +1,185 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * Tests that MyBoundedHeap keeps the entries with the largest keys and reports
+ * what it evicts or rejects.
+ */
+public class MyBoundedHeapTest {
+
+	@Test
+	public void testOfferReportsEvictedAndRejected() {
+		MyBoundedHeap<Integer, String> heap = new MyBoundedHeap<Integer, String>(new IntegerComparator(), 3);
+		assertNull(heap.offer(20, "A"));
+		assertNull(heap.offer(10, "B"));
+		assertNull(heap.offer(30, "C"));
+		assertTrue(heap.isFull());
+
+		// not better than the worst kept
+		assertTrue(heap.offer(10, "D") == MyBoundedHeap.<Integer, String> rejected());
+		assertEquals("B", heap.min().getValue());
+
+		Entry<Integer, String> evicted = heap.offer(25, "E");
+		assertEquals("B", evicted.getValue());
+		assertEquals(3, heap.size());
+		assertEquals(20, (int) heap.min().getKey());
+	}
+
+	@Test
+	public void testInsertReturnsRejectedEntry() {
+		MyBoundedHeap<Integer, String> heap = new MyBoundedHeap<Integer, String>(new IntegerComparator(), 2);
+		heap.insert(50, "A");
+		heap.insert(60, "B");
+		Entry<Integer, String> rejected = heap.insert(40, "C");
+		assertTrue(rejected == MyBoundedHeap.<Integer, String> rejected());
+		assertNull(rejected.getKey());
+		try {
+			heap.remove(rejected);
+			fail();
+		} catch (InvalidEntryException e) {
+			// expected
+		}
+		// 70 evicts 50
+		Entry<Integer, String> entry = heap.insert(70, "D");
+		assertEquals(entry, heap.remove(entry));
+		assertEquals(60, (int) heap.removeMin().getKey());
+		assertTrue(heap.isEmpty());
+	}
+
+	@Test
+	public void testKeepsLargestKeys() {
+		Random random = new Random(18);
+		MyBoundedHeap<Integer, Integer> heap = new MyBoundedHeap<Integer, Integer>(new IntegerComparator(), 10);
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			int key = 1 + random.nextInt(99);
+			keys.add(key);
+			heap.offer(key, i);
+		}
+		Collections.sort(keys);
+		List<Integer> kept = new ArrayList<Integer>();
+		while (!heap.isEmpty()) {
+			kept.add(heap.removeMin().getKey());
+		}
+		assertThat(kept, is(keys.subList(keys.size() - 10, keys.size())));
+	}
+
+	@Test
+	public void testInsertAllMarksRejected() {
+		MyBoundedHeap<Integer, String> heap = new MyBoundedHeap<Integer, String>(new IntegerComparator(), 2);
+		List<Entry<Integer, String>> created = heap.insertAll(Arrays.asList(new MyHeapEntry<Integer, String>(5, "A"),
+				new MyHeapEntry<Integer, String>(7, "B"), new MyHeapEntry<Integer, String>(3, "C")));
+		assertEquals(3, created.size());
+		assertTrue(created.get(2) == MyBoundedHeap.<Integer, String> rejected());
+		assertEquals(2, heap.size());
+	}
+
+	/*
+	 * Merging keeps the largest keys of both heaps and evicts the rest.
+	 */
+	@Test
+	public void testMergeEvictsDownToCapacity() {
+		MyBoundedHeap<Integer, String> heap = new MyBoundedHeap<Integer, String>(new IntegerComparator(), 3);
+		MyHeap<Integer, String> other = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.insert(10, "A");
+		Entry<Integer, String> kept = heap.insert(40, "B");
+		Entry<Integer, String> moved = other.insert(50, "C");
+		other.insert(20, "D");
+		other.insert(30, "E");
+
+		heap.merge(other);
+		assertTrue(other.isEmpty());
+		assertEquals(3, heap.size());
+		assertEquals(50, (int) heap.replaceKey(moved, 60));
+		assertEquals(30, (int) heap.removeMin().getKey());
+		assertEquals(kept, heap.removeMin());
+		assertEquals(moved, heap.removeMin());
+	}
+
+	/*
+	 * With recycling on, an entry evicted by insert() is never reused, so its
+	 * handle stays rejected instead of naming a newer entry.
+	 */
+	@Test
+	public void testEvictedEntriesAreNotRecycled() {
+		MyBoundedHeap<Integer, String> heap = new MyBoundedHeap<Integer, String>(new IntegerComparator(), 2);
+		heap.setRecycling(2);
+		Entry<Integer, String> first = heap.insert(10, "A");
+		heap.insert(20, "B");
+		// evicts the entry of 10
+		heap.insert(30, "C");
+		Entry<Integer, String> next = heap.insert(40, "D");
+		assertTrue(next != first);
+		assertEquals(10, (int) first.getKey());
+		try {
+			heap.remove(first);
+			fail();
+		} catch (InvalidEntryException e) {
+			// expected
+		}
+		assertEquals(2, heap.size());
+	}
+
+	/*
+	 * The entry offer() evicts goes back to the pool once the caller releases
+	 * it.
+	 */
+	@Test
+	public void testOfferedEvictionCanBeReleased() {
+		MyBoundedHeap<Integer, String> heap = new MyBoundedHeap<Integer, String>(new IntegerComparator(), 1);
+		heap.setRecycling(2);
+		heap.offer(10, "A");
+		Entry<Integer, String> evicted = heap.offer(20, "B");
+		heap.release(evicted);
+		assertEquals("B", heap.offer(30, "C").getValue());
+		assertTrue(heap.min() == evicted);
+		assertEquals(30, (int) evicted.getKey());
+	}
+
+	/*
+	 * The shared rejected() entry is refused as a handle and by release(), so
+	 * it can never become a live entry.
+	 */
+	@Test
+	public void testRejectedEntryCannotBeReleased() {
+		MyBoundedHeap<Integer, String> heap = new MyBoundedHeap<Integer, String>(new IntegerComparator(), 1);
+		heap.setRecycling(4);
+		heap.insert(5, "A");
+		Entry<Integer, String> rejected = heap.insert(1, "one");
+		try {
+			heap.release(rejected);
+			fail();
+		} catch (InvalidEntryException e) {
+			// expected
+		}
+		heap.insert(9, "nine");
+		assertNull(MyBoundedHeap.<Integer, String> rejected().getKey());
+		assertNull(MyBoundedHeap.<Integer, String> rejected().getValue());
+	}
+
+	@Test(expected = InvalidKeyException.class)
+	public void testRejectedKeyIsStillChecked() {
+		MyBoundedHeap<Integer, String> heap = new MyBoundedHeap<Integer, String>(new IntegerComparator(), 1);
+		heap.insert(50, "A");
+		heap.offer(0, "B");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructorThrowsIllegalArgumentException() {
+		new MyBoundedHeap<Integer, String>(new IntegerComparator(), 0);
+	}
+}
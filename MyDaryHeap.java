@@ -0,0 +1,274 @@
+package heap;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * An implementation of an adaptable priority queue by means of a d-ary heap:
+ * every node has up to d children instead of two. The heap is stored directly
+ * in an array of MyHeapEntry, where the entry at index i has its parent at
+ * (i - 1) / d and its children at d*i + 1 through d*i + d, and every entry
+ * remembers its index.
+ *
+ * A wider node makes the tree shallower (a 10M entry heap is 12 levels deep
+ * with d = 4 and 8 levels with d = 8, instead of 23), so upSort touches fewer
+ * levels and downSort touches fewer but wider levels whose children sit next
+ * to each other in the array. Arity 4 or 8 suits insert and decrease-key heavy
+ * workloads best; arity 2 behaves like MyHeap.
+ *
+ * Keys follow the same rules as MyHeap. insert(), removeMin(), remove() and
+ * replaceKey() run in O(d log_d n) time, the rest in O(1) time.
+ */
+
+public class MyDaryHeap<K, V> implements AdaptablePriorityQueue<K, V> {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private MyHeapEntry<K, V>[] _entries;
+	private int _size;
+	private final int _arity;
+	private Comparator<K> _comparator;
+
+	/**
+	 * Creates an empty 4-ary heap with the given comparator.
+	 *
+	 * @param comparator
+	 *            the comparator to be used for heap keys
+	 */
+	public MyDaryHeap(Comparator<K> comparator) {
+		this(comparator, 4);
+	}
+
+	/**
+	 * Creates an empty heap with the given comparator and number of children
+	 * per node.
+	 *
+	 * @param comparator
+	 *            the comparator to be used for heap keys
+	 * @param arity
+	 *            the number of children per node, such as 2, 4 or 8
+	 * @throws IllegalArgumentException
+	 *             if arity is less than 2
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public MyDaryHeap(Comparator<K> comparator, int arity) throws IllegalArgumentException {
+		if (arity < 2) {
+			throw new IllegalArgumentException("arity must be at least 2");
+		}
+		_entries = (MyHeapEntry<K, V>[]) new MyHeapEntry[DEFAULT_CAPACITY];
+		_size = 0;
+		_arity = arity;
+		_comparator = comparator;
+	}
+
+	/**
+	 * @return the number of children per node
+	 */
+	public int getArity() {
+		return _arity;
+	}
+
+	/**
+	 * Returns the size of the heap. This method runs in O(1) time.
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Returns whether the heap is empty. This method runs in O(1) time.
+	 */
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * Returns but does not remove an entry with minimum key. This method runs
+	 * in O(1) time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the heap is empty
+	 */
+	public Entry<K, V> min() throws EmptyPriorityQueueException {
+		if (isEmpty()) {
+			throw new EmptyPriorityQueueException("heap is empty");
+		}
+		return _entries[0];
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the entry created. This method runs
+	 * in O(log_d n) time.
+	 *
+	 * @throws InvalidKeyException
+	 *             if the key is not suitable for this heap
+	 */
+	public Entry<K, V> insert(K key, V value) throws InvalidKeyException {
+		MyHeap.checkKey(key);
+		if (_size == _entries.length) {
+			_entries = Arrays.copyOf(_entries, _size * 2);
+		}
+		MyHeapEntry<K, V> entry = new MyHeapEntry<K, V>(key, value);
+		upSort(entry, _size++);
+		return entry;
+	}
+
+	/**
+	 * Removes and returns an entry with minimum key. This method runs in
+	 * O(d log_d n) time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the heap is empty
+	 */
+	public Entry<K, V> removeMin() throws EmptyPriorityQueueException {
+		return remove(min());
+	}
+
+	/**
+	 * Removes and returns the given entry from the heap. This method runs in
+	 * O(d log_d n) time.
+	 *
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this heap
+	 */
+	public Entry<K, V> remove(Entry<K, V> entry) throws InvalidEntryException {
+		MyHeapEntry<K, V> checkedEntry = checkAndConvertEntry(entry);
+		int hole = checkedEntry.get_index();
+
+		MyHeapEntry<K, V> last = _entries[--_size];
+		_entries[_size] = null;
+		checkedEntry.set_index(-1);
+
+		// refill the hole left by the removed entry with the last entry
+		if (last != checkedEntry) {
+			resort(last, hole);
+		}
+		return checkedEntry;
+	}
+
+	/**
+	 * Replaces the key of the given entry. This method runs in O(d log_d n)
+	 * time.
+	 *
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this heap
+	 * @throws InvalidKeyException
+	 *             if the key is not suitable for this heap
+	 */
+	public K replaceKey(Entry<K, V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		MyHeapEntry<K, V> checkedEntry = checkAndConvertEntry(entry);
+		MyHeap.checkKey(key);
+
+		K oldKey = checkedEntry.getKey();
+		checkedEntry.setKey(key);
+		resort(checkedEntry, checkedEntry.get_index());
+		return oldKey;
+	}
+
+	/**
+	 * Replaces the value of the given entry. This method runs in O(1) time.
+	 *
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this heap
+	 */
+	public V replaceValue(Entry<K, V> entry, V value) throws InvalidEntryException {
+		MyHeapEntry<K, V> checkedEntry = checkAndConvertEntry(entry);
+		V oldValue = checkedEntry.getValue();
+		checkedEntry.setValue(value);
+		return oldValue;
+	}
+
+	/**
+	 * Determines whether a given entry is currently stored in this heap and
+	 * converts it to a MyHeapEntry.
+	 *
+	 * @throws InvalidEntryException
+	 *             if the entry is not of the proper class or not in this heap
+	 */
+	@SuppressWarnings("unchecked")
+	private MyHeapEntry<K, V> checkAndConvertEntry(Entry<K, V> entry) throws InvalidEntryException {
+		if (!(entry instanceof MyHeapEntry)) {
+			throw new InvalidEntryException("Invalid entry");
+		}
+		MyHeapEntry<K, V> checkedEntry = (MyHeapEntry<K, V>) entry;
+		int index = checkedEntry.get_index();
+		if (index < 0 || index >= _size || _entries[index] != checkedEntry) {
+			throw new InvalidEntryException("entry not in heap");
+		}
+		return checkedEntry;
+	}
+
+	/**
+	 * Places an entry that belongs at the given index (whose slot may still
+	 * hold a stale occupant) up or down the heap as its key requires.
+	 */
+	private void resort(MyHeapEntry<K, V> entry, int index) {
+		if (index > 0 && _comparator.compare(entry.getKey(), _entries[(index - 1) / _arity].getKey()) < 0) {
+			upSort(entry, index);
+		} else {
+			downSort(entry, index);
+		}
+	}
+
+	/**
+	 * Walks the entry up from the given index, moving every parent with a
+	 * larger key one level down, and writes the entry once where it comes to
+	 * rest.
+	 */
+	private void upSort(MyHeapEntry<K, V> entry, int index) {
+		K key = entry.getKey();
+		while (index > 0) {
+			int parent = (index - 1) / _arity;
+			if (_comparator.compare(key, _entries[parent].getKey()) >= 0) {
+				break;
+			}
+			place(_entries[parent], index);
+			index = parent;
+		}
+		place(entry, index);
+	}
+
+	/**
+	 * Walks the entry down from the given index, moving the smallest of the d
+	 * children one level up while it is smaller than the entry, and writes the
+	 * entry once where it comes to rest.
+	 */
+	private void downSort(MyHeapEntry<K, V> entry, int index) {
+		K key = entry.getKey();
+		while (true) {
+			int first = _arity * index + 1;
+			if (first >= _size) {
+				break;
+			}
+			int end = Math.min(first + _arity, _size);
+			int smallest = first;
+			K smallestKey = _entries[first].getKey();
+			for (int child = first + 1; child < end; child++) {
+				K childKey = _entries[child].getKey();
+				if (_comparator.compare(childKey, smallestKey) < 0) {
+					smallest = child;
+					smallestKey = childKey;
+				}
+			}
+			if (_comparator.compare(key, smallestKey) <= 0) {
+				break;
+			}
+			place(_entries[smallest], index);
+			index = smallest;
+		}
+		place(entry, index);
+	}
+
+	private void place(MyHeapEntry<K, V> entry, int index) {
+		_entries[index] = entry;
+		entry.set_index(index);
+	}
+}
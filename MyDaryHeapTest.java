@@ -0,0 +1,50 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.datastructures.AdaptablePriorityQueue;
+
+/**
+ * Runs the AdaptablePriorityQueueTest cases against the default 4-ary
+ * MyDaryHeap, plus cases for the other arities it is meant to be used with.
+ */
+public class MyDaryHeapTest extends AdaptablePriorityQueueTest {
+
+	private static final int[] ARITIES = { 2, 4, 8 };
+
+	@Override
+	protected AdaptablePriorityQueue<Integer, String> newHeap() {
+		return new MyDaryHeap<Integer, String>(new IntegerComparator());
+	}
+
+	@Test
+	public void testRemoveMinHeapOrderForEveryArity() {
+		for (int arity : ARITIES) {
+			MyDaryHeap<Integer, String> heap = new MyDaryHeap<Integer, String>(new IntegerComparator(), arity);
+			heap.insert(11, "A");
+			heap.insert(13, "B");
+			heap.insert(64, "C");
+			heap.insert(16, "D");
+			heap.insert(44, "E");
+
+			List<Integer> actualKeys = new ArrayList<Integer>();
+			while (!heap.isEmpty()) {
+				actualKeys.add(heap.removeMin().getKey());
+			}
+			assertThat(actualKeys, is(Arrays.asList(11, 13, 16, 44, 64)));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConstructorThrowsIllegalArgumentException() {
+		new MyDaryHeap<Integer, String>(new IntegerComparator(), 1);
+	}
+
+}
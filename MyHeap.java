@@ -1,6 +1,23 @@
 package heap;
 
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 import net.datastructures.CompleteBinaryTree;
 import net.datastructures.EmptyPriorityQueueException;
 import net.datastructures.Entry;
@@ -8,7 +25,6 @@ import net.datastructures.InvalidEntryException;
 import net.datastructures.InvalidKeyException;
 import net.datastructures.Position;
 import net.datastructures.AdaptablePriorityQueue;
-import net.datastructures.BoundaryViolationException;
 import support.heap.HeapWrapper;
 
 /**
@@ -26,8 +42,38 @@ import support.heap.HeapWrapper;
 public class MyHeap<K, V> implements HeapWrapper<K, V>, AdaptablePriorityQueue<K, V> {
 
 	// This the underlying data structure of your heap
-	private MyLinkedHeapTree<MyHeapEntry<K, V>> _tree;
+	private CompleteBinaryTree<MyHeapEntry<K, V>> _tree;
 	private Comparator<K> _comparator;
+	// unsorted staging area for inserts when buffering is on, null otherwise
+	private ArrayList<MyHeapEntry<K, V>> _buffer;
+	private int _bufferCapacity;
+	private FlushPolicy _flushPolicy;
+	// operation metrics when enabled, null otherwise
+	private HeapMetrics _metrics;
+	// the entry holding each value when the value index is on, null otherwise
+	private HashMap<V, MyHeapEntry<K, V>> _values;
+	// computes the sort prefix stored in every entry, null if keys are only
+	// compared with the comparator
+	private KeyNormalizer<K> _normalizer;
+	// released entries kept for reuse by insert(), null if recycling is off
+	private ArrayDeque<MyHeapEntry<K, V>> _free;
+	private int _freeCapacity;
+
+	// first two ints of a snapshot file: "HEAP" and the format version
+	private static final int SNAPSHOT_MAGIC = 0x48454150;
+	private static final int SNAPSHOT_VERSION = 1;
+
+	/**
+	 * How entries staged in the insert buffer are merged into the tree.
+	 */
+	public enum FlushPolicy {
+		/** sort every buffered entry up on its own, O(m log n) */
+		SIFT,
+		/** rebuild heap order bottom-up over the whole tree, O(n + m) */
+		HEAPIFY,
+		/** pick whichever of the two is cheaper for the buffer size */
+		ADAPTIVE
+	}
 
 	/**
 	 * Creates an empty heap with the given comparator.
@@ -36,10 +82,47 @@ public class MyHeap<K, V> implements HeapWrapper<K, V>, AdaptablePriorityQueue<K
 	 *            comparator to be used for heap keys
 	 */
 	public MyHeap(Comparator<K> comparator) {
-		_tree = new MyLinkedHeapTree<MyHeapEntry<K, V>>();
+		this(comparator, new MyLinkedHeapTree<MyHeapEntry<K, V>>());
+	}
+
+	/**
+	 * Creates an empty heap with the given comparator that is stored in the
+	 * given complete binary tree, for example a MyArrayHeapTree instead of the
+	 * default MyLinkedHeapTree.
+	 * 
+	 * @param comparator
+	 *            the comparator to be used for heap keys
+	 * @param tree
+	 *            an empty tree to hold the heap entries
+	 * @throws IllegalArgumentException
+	 *             if the tree is null or not empty
+	 */
+	public MyHeap(Comparator<K> comparator, CompleteBinaryTree<MyHeapEntry<K, V>> tree)
+			throws IllegalArgumentException {
+		if (tree == null || !tree.isEmpty()) {
+			throw new IllegalArgumentException("tree must be empty");
+		}
+		_tree = tree;
 		_comparator = comparator;
 	}
 
+	/**
+	 * Creates a heap with the given comparator that holds the given entries,
+	 * built in O(n) time with insertAll(). Use the one argument constructor
+	 * followed by insertAll() if the handles of the new entries are needed.
+	 * 
+	 * @param comparator
+	 *            the comparator to be used for heap keys
+	 * @param entries
+	 *            the key/value pairs to load into the heap
+	 * @throws InvalidKeyException
+	 *             if any of the keys is not suitable for this heap
+	 */
+	public MyHeap(Comparator<K> comparator, Collection<? extends Entry<K, V>> entries) throws InvalidKeyException {
+		this(comparator);
+		insertAll(entries);
+	}
+
 	/**
 	 * Sets the comparator used for comparing items in the heap to the
 	 * comparator passed in.
@@ -58,6 +141,280 @@ public class MyHeap<K, V> implements HeapWrapper<K, V>, AdaptablePriorityQueue<K
 		if (comparator == null) {
 			throw new IllegalArgumentException("null comparator");
 		}
+		_comparator = _metrics == null ? comparator : _metrics.countingComparator(comparator);
+	}
+
+	/**
+	 * Sets the normalizer whose long prefixes are compared before the
+	 * comparator is called, or turns prefixes off if it is null. Every entry
+	 * stores the prefix of its key, computed when it is inserted or its key
+	 * is replaced, and sorting an entry up or down only calls the comparator
+	 * when two prefixes are equal (never, for an exact normalizer). The
+	 * normalizer must order keys the same way as the comparator.
+	 * 
+	 * @param normalizer
+	 *            the normalizer for heap keys, or null
+	 * @throws IllegalStateException
+	 *             if priority queue is not empty
+	 */
+	public void setKeyNormalizer(KeyNormalizer<K> normalizer) throws IllegalStateException {
+		if (!isEmpty()) {
+			throw new IllegalStateException("priority queue is not empty");
+		}
+		_normalizer = normalizer;
+	}
+
+	/**
+	 * @return the key normalizer of this heap, or null if it has none
+	 */
+	public KeyNormalizer<K> getKeyNormalizer() {
+		return _normalizer;
+	}
+
+	/**
+	 * Turns on metrics: from now on comparator calls, entry moves, sort
+	 * depths, the latency of insert(), removeMin(), remove() and replaceKey(),
+	 * and the largest size are recorded into the returned HeapMetrics, which
+	 * can also be published over JMX. While metrics are off the heap keeps no
+	 * HeapMetrics and its comparator is not wrapped, so they cost nothing.
+	 * Calling this again returns the metrics already being collected.
+	 * 
+	 * @return the metrics of this heap
+	 */
+	public HeapMetrics enableMetrics() {
+		if (_metrics == null) {
+			_metrics = new HeapMetrics();
+			_metrics.recordSize(size());
+			_comparator = _metrics.countingComparator(_comparator);
+		}
+		return _metrics;
+	}
+
+	/**
+	 * Turns metrics off again and drops the metrics collected so far.
+	 */
+	public void disableMetrics() {
+		if (_metrics != null) {
+			_comparator = HeapMetrics.unwrap(_comparator);
+			_metrics = null;
+		}
+	}
+
+	/**
+	 * @return the metrics of this heap, or null if they are not enabled
+	 */
+	public HeapMetrics getMetrics() {
+		return _metrics;
+	}
+
+	/**
+	 * Turns recycling on or off. While it is on, up to the given number of
+	 * entries handed back with release() are kept and reused by insert() and
+	 * insertAll(), and a MyLinkedHeapTree keeps as many of its removed nodes
+	 * for reuse, so a heap that inserts and removes at the same rate
+	 * allocates nothing once warm. Removed entries are only reused after an
+	 * explicit release(), because removeMin() and remove() hand them to the
+	 * caller, who may still be reading them. A reused entry is the same
+	 * object as the stale handle to its earlier life, so remove(),
+	 * replaceKey() and replaceValue() reject it; it is changed through the
+	 * variants that take the generation it had when insert() returned it.
+	 * 
+	 * @param capacity
+	 *            the most entries (and nodes) kept for reuse, 0 to turn
+	 *            recycling off
+	 * @throws IllegalArgumentException
+	 *             if capacity is negative
+	 */
+	public void setRecycling(int capacity) throws IllegalArgumentException {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("negative pool capacity");
+		}
+		_freeCapacity = capacity;
+		if (capacity == 0) {
+			_free = null;
+		} else if (_free == null) {
+			_free = new ArrayDeque<MyHeapEntry<K, V>>(capacity);
+		} else {
+			while (_free.size() > capacity) {
+				_free.removeLast();
+			}
+		}
+		if (_tree instanceof MyLinkedHeapTree) {
+			((MyLinkedHeapTree<MyHeapEntry<K, V>>) _tree).setNodePool(capacity);
+		}
+	}
+
+	/**
+	 * Hands an entry that was removed from the heap back for reuse. The entry
+	 * is cleared and its generation moves on, so it must not be used again.
+	 * Once reused, the entry is rejected by remove(), replaceKey() and
+	 * replaceValue(), and by the variants that take a generation unless they
+	 * are given its new one, so a stale handle cannot change the entry's new
+	 * life. This method runs in O(1) time.
+	 * 
+	 * @param entry
+	 *            an entry that is no longer in any heap
+	 * @throws IllegalStateException
+	 *             if recycling is off
+	 * @throws InvalidEntryException
+	 *             if the entry is still in this or another heap or was
+	 *             already released
+	 */
+	public void release(Entry<K, V> entry) throws IllegalStateException, InvalidEntryException {
+		if (_free == null) {
+			throw new IllegalStateException("recycling is off");
+		}
+		MyHeapEntry<K, V> checkedEntry = checkAndConvertEntry(entry);
+		if (checkedEntry.get_heap() == this) {
+			throw new InvalidEntryException("entry still in heap");
+		}
+		if (checkedEntry.get_heap() != null || checkedEntry.get_position() != null) {
+			throw new InvalidEntryException("entry held by another heap");
+		}
+		if ((checkedEntry._generation & 1) != 0) {
+			throw new InvalidEntryException("entry already released");
+		}
+		recycle(checkedEntry);
+	}
+
+	/**
+	 * Removes the given entry like remove(), after making sure it has not
+	 * been released and reused since it had the given generation.
+	 * 
+	 * @throws InvalidEntryException
+	 *             if the entry cannot be removed from this heap or its
+	 *             generation has moved on
+	 */
+	public Entry<K, V> remove(Entry<K, V> entry, int generation) throws InvalidEntryException {
+		checkGeneration(entry, generation);
+		return removeTimed(entry);
+	}
+
+	/**
+	 * Replaces the key of the given entry like replaceKey(), after making sure
+	 * it has not been released and reused since it had the given generation.
+	 * 
+	 * @throws InvalidEntryException
+	 *             if the entry is invalid or its generation has moved on
+	 * @throws InvalidKeyException
+	 *             if the key is invalid
+	 */
+	public K replaceKey(Entry<K, V> entry, K key, int generation) throws InvalidEntryException, InvalidKeyException {
+		checkGeneration(entry, generation);
+		return replaceKeyTimed(entry, key);
+	}
+
+	/**
+	 * Replaces the value of the given entry like replaceValue(), after making
+	 * sure it has not been released and reused since it had the given
+	 * generation.
+	 * 
+	 * @throws InvalidEntryException
+	 *             if the entry is invalid or its generation has moved on
+	 * @throws IllegalArgumentException
+	 *             if the value index is on and another entry holds the value
+	 */
+	public V replaceValue(Entry<K, V> entry, V value, int generation) throws InvalidEntryException {
+		checkGeneration(entry, generation);
+		return replaceEntryValue(entry, value);
+	}
+
+	/**
+	 * Turns the value index on or off. While it is on the heap keeps a map
+	 * from every value (compared with equals()) to the entry holding it, so
+	 * containsValue(), replaceKeyForValue() and removeValue() can find an
+	 * entry without the caller keeping its handle. Values must then be
+	 * unique: inserting a value that is already in the heap, or giving an
+	 * entry such a value, throws an IllegalArgumentException. Turning the
+	 * index on indexes the entries already in the heap in O(n) time.
+	 * 
+	 * @param enabled
+	 *            whether to keep the value index
+	 * @throws IllegalStateException
+	 *             if the index is being turned on and two entries already
+	 *             hold equal values
+	 */
+	public void setValueIndex(boolean enabled) throws IllegalStateException {
+		if (!enabled) {
+			_values = null;
+			return;
+		}
+		if (_values != null) {
+			return;
+		}
+		HashMap<V, MyHeapEntry<K, V>> values = new HashMap<V, MyHeapEntry<K, V>>(size() * 2);
+		List<MyHeapEntry<K, V>> entries = new ArrayList<MyHeapEntry<K, V>>(size());
+		for (Position<MyHeapEntry<K, V>> position : levelOrderPositions()) {
+			entries.add(position.element());
+		}
+		if (_buffer != null) {
+			entries.addAll(_buffer);
+		}
+		for (MyHeapEntry<K, V> entry : entries) {
+			if (values.put(entry.getValue(), entry) != null) {
+				throw new IllegalStateException("duplicate value: " + entry.getValue());
+			}
+		}
+		_values = values;
+	}
+
+	/**
+	 * @return whether the value index is on
+	 */
+	public boolean isValueIndexed() {
+		return _values != null;
+	}
+
+	/**
+	 * Returns whether an entry of the heap holds the given value. This method
+	 * runs in O(1) expected time.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the value index is off
+	 */
+	public boolean containsValue(V value) throws IllegalStateException {
+		return valueIndex().containsKey(value);
+	}
+
+	/**
+	 * Returns the entry holding the given value, or null if there is none.
+	 * This method runs in O(1) expected time.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the value index is off
+	 */
+	public Entry<K, V> getEntry(V value) throws IllegalStateException {
+		return valueIndex().get(value);
+	}
+
+	/**
+	 * Replaces the key of the entry holding the given value, like
+	 * replaceKey(). This method runs in O(log n) time.
+	 * 
+	 * @return the old key formerly associated with the value
+	 * @throws IllegalStateException
+	 *             if the value index is off
+	 * @throws InvalidEntryException
+	 *             if no entry holds the value
+	 * @throws InvalidKeyException
+	 *             if the key is invalid
+	 */
+	public K replaceKeyForValue(V value, K key)
+			throws IllegalStateException, InvalidEntryException, InvalidKeyException {
+		return replaceKeyTimed(entryFor(value), key);
+	}
+
+	/**
+	 * Removes and returns the entry holding the given value, like remove().
+	 * This method runs in O(log n) time.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the value index is off
+	 * @throws InvalidEntryException
+	 *             if no entry holds the value
+	 */
+	public Entry<K, V> removeValue(V value) throws IllegalStateException, InvalidEntryException {
+		return removeTimed(entryFor(value));
 	}
 
 	/**
@@ -75,15 +432,64 @@ public class MyHeap<K, V> implements HeapWrapper<K, V>, AdaptablePriorityQueue<K
 		return _tree;
 	}
 
+	/**
+	 * Turns on buffered inserts. From now on insert() only appends the new
+	 * entry to an unsorted buffer in O(1) time, and the buffer is merged into
+	 * the tree once it holds the given number of entries, or earlier when
+	 * min() or removeMin() needs the heap ordered. Buffered entries are valid
+	 * handles: replaceKey(), replaceValue() and remove() work on them in O(1)
+	 * time. remove() and replaceKey() of an entry already in the tree leave
+	 * the buffer alone.
+	 * 
+	 * A capacity of 0 turns buffering off again, after merging whatever is
+	 * still buffered; the policy may then be null.
+	 * 
+	 * @param capacity
+	 *            the number of entries buffered before a merge is forced
+	 * @param policy
+	 *            how a full (or needed) buffer is merged into the tree
+	 * @throws IllegalArgumentException
+	 *             if capacity is negative, or policy is null while capacity
+	 *             is positive
+	 */
+	public void setInsertBuffer(int capacity, FlushPolicy policy) throws IllegalArgumentException {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("negative buffer capacity");
+		}
+		if (policy == null && capacity > 0) {
+			throw new IllegalArgumentException("null flush policy");
+		}
+		flush();
+		_bufferCapacity = capacity;
+		_flushPolicy = policy;
+		_buffer = capacity == 0 ? null : new ArrayList<MyHeapEntry<K, V>>(capacity);
+	}
+
+	/**
+	 * Merges every entry waiting in the insert buffer into the tree, using the
+	 * flush policy given to setInsertBuffer(). Does nothing if buffering is
+	 * off or the buffer is empty.
+	 */
+	public void flush() {
+		if (_buffer == null || _buffer.isEmpty()) {
+			return;
+		}
+		for (MyHeapEntry<K, V> entry : _buffer) {
+			entry.set_index(-1);
+		}
+		addAndSort(_buffer, _flushPolicy);
+		_buffer.clear();
+	}
+
 	/**
 	 * Returns the size of the heap. This method must run in O(1) time.
 	 *
 	 * @return an int representing the number of entries stored
 	 */
 	public int size() {
-		// as size of the heap is equal to the size of the tree
-		// return the size of the tree
-		return _tree.size();
+		// as size of the heap is equal to the size of the tree plus whatever
+		// is still waiting in the insert buffer
+		return _buffer == null ? _tree.size() : _tree.size() + _buffer.size();
 
 	}
 
@@ -93,7 +499,7 @@ public class MyHeap<K, V> implements HeapWrapper<K, V>, AdaptablePriorityQueue<K
 	 * @return true if the heap is empty; false otherwise
 	 */
 	public boolean isEmpty() {
-		if (_tree.isEmpty()) {
+		if (size() == 0) {
 			return true;
 		} else {
 			return false;
@@ -102,7 +508,7 @@ public class MyHeap<K, V> implements HeapWrapper<K, V>, AdaptablePriorityQueue<K
 
 	/**
 	 * Returns but does not remove an entry with minimum key. This method must
-	 * run in O(1) time.
+	 * run in O(1) time, apart from merging the insert buffer if there is one.
 	 * 
 	 * @return the entry with the minimum key in the heap
 	 * @throws EmptyPriorityQueueException
@@ -113,6 +519,7 @@ public class MyHeap<K, V> implements HeapWrapper<K, V>, AdaptablePriorityQueue<K
 		if (isEmpty()) {
 			throw new EmptyPriorityQueueException("heap is empty");
 		}
+		flush();
 		// due to min heap structure the minimum value will always be the root
 		return _tree.root().element();
 	}
@@ -128,18 +535,123 @@ public class MyHeap<K, V> implements HeapWrapper<K, V>, AdaptablePriorityQueue<K
 	 * @return the entry created using the key/value parameters
 	 * @throws InvalidKeyException
 	 *             if the key is not suitable for this heap
+	 * @throws IllegalArgumentException
+	 *             if the value index is on and the value is already in the
+	 *             heap
 	 */
 	public Entry<K, V> insert(K key, V value) throws InvalidKeyException {
-		if ((int) key < 1 || (int) key > 99) {
-			throw new InvalidKeyException("key out of appropriate range");
+		if (_metrics == null) {
+			return insertEntry(key, value);
 		}
+		long start = System.nanoTime();
+		Entry<K, V> entry = insertEntry(key, value);
+		_metrics.recordLatency(HeapMetrics.Operation.INSERT, System.nanoTime() - start);
+		_metrics.recordSize(size());
+		return entry;
+	}
 
-		MyHeapEntry<K, V> entry = new MyHeapEntry<K, V>(key, value);
+	// does the work of insert(), which times it when metrics are on
+	private Entry<K, V> insertEntry(K key, V value) throws InvalidKeyException {
+		checkKey(key);
+		checkNewValue(value);
+
+		MyHeapEntry<K, V> entry = newEntry(key, value);
+		entry.set_heap(this);
+		normalize(entry);
+		indexValue(entry);
+		if (_buffer != null) {
+			// stage the entry, its index in the buffer keeps it a valid handle
+			entry.set_index(_buffer.size());
+			_buffer.add(entry);
+			if (_buffer.size() >= _bufferCapacity) {
+				flush();
+			}
+			return entry;
+		}
 		// in order to allow for O(logn) runtime manipulation of the tree set entry's position
 		entry.set_position(_tree.add(entry));
-		// check to see if the inserted entry has child whose key is larger than its own, if so swap
-		return upSort(entry.get_position()).element();
-		
+		// move the entry up past every parent whose key is larger than its own
+		upSort(entry.get_position());
+		return entry;
+	}
+
+	/**
+	 * Inserts all of the given key-value pairs and returns the entries created,
+	 * in the same order as the pairs. The entries are appended to the tree in
+	 * one pass, and then, if the batch is large compared to the heap, heap
+	 * order is restored bottom-up (Floyd's method) by calling downSort() on
+	 * every internal node from the last one back to the root, which runs in
+	 * O(n + m) time. A small batch is instead sorted up entry by entry, which
+	 * runs in O(m log(n + m)) time. No entry is inserted if any key is invalid.
+	 * 
+	 * @param entries
+	 *            the key/value pairs to insert
+	 * @return the entries created, which can be used like those from insert()
+	 * @throws InvalidKeyException
+	 *             if any of the keys is not suitable for this heap
+	 * @throws IllegalArgumentException
+	 *             if the value index is on and a value would be held twice
+	 */
+	public List<Entry<K, V>> insertAll(Collection<? extends Entry<K, V>> entries) throws InvalidKeyException {
+		for (Entry<K, V> pair : entries) {
+			checkKey(pair.getKey());
+		}
+		checkNewValues(entries);
+
+		List<MyHeapEntry<K, V>> created = new ArrayList<MyHeapEntry<K, V>>(entries.size());
+		for (Entry<K, V> pair : entries) {
+			MyHeapEntry<K, V> entry = newEntry(pair.getKey(), pair.getValue());
+			normalize(entry);
+			indexValue(entry);
+			created.add(entry);
+		}
+		addAndSort(created, FlushPolicy.ADAPTIVE);
+		if (_metrics != null) {
+			_metrics.recordSize(size());
+		}
+		return new ArrayList<Entry<K, V>>(created);
+	}
+
+	/**
+	 * Moves every entry of the other heap into this one, leaving the other
+	 * heap empty. The entries keep their identity, so handles from either heap
+	 * stay valid and now belong to this heap. The other heap's entries are
+	 * appended in one pass and ordered like insertAll(): sorted up one by one
+	 * when there are few of them, heapified otherwise, for O(m log(n + m)) or
+	 * O(n + m) time. A complete binary tree cannot be melded in sublinear
+	 * time; MyPairingHeap.merge() runs in O(1) time where that is needed. Both
+	 * heaps must order keys the same way.
+	 * 
+	 * @param other
+	 *            the heap to empty into this one
+	 * @throws IllegalArgumentException
+	 *             if other is null or this heap, or if the value index is on
+	 *             and a value would be held twice
+	 */
+	public void merge(MyHeap<K, V> other) throws IllegalArgumentException {
+		if (other == null || other == this) {
+			throw new IllegalArgumentException("cannot merge a heap with itself or null");
+		}
+		other.flush();
+		List<MyHeapEntry<K, V>> moved = new ArrayList<MyHeapEntry<K, V>>(other._tree.size());
+		for (Position<MyHeapEntry<K, V>> position : other.levelOrderPositions()) {
+			moved.add(position.element());
+		}
+		checkNewValues(moved);
+		for (MyHeapEntry<K, V> entry : moved) {
+			normalize(entry);
+			indexValue(entry);
+		}
+		if (other._values != null) {
+			other._values.clear();
+		}
+		while (!other._tree.isEmpty()) {
+			other._tree.remove();
+		}
+		addAndSort(moved, FlushPolicy.ADAPTIVE);
+		if (_metrics != null) {
+			_metrics.recordSize(size());
+		}
 	}
 
 	/**
@@ -153,7 +665,265 @@ public class MyHeap<K, V> implements HeapWrapper<K, V>, AdaptablePriorityQueue<K
 	public Entry<K, V> removeMin() throws EmptyPriorityQueueException {
 		// do not have to throw exception because calling min() checks for an
 		// empty heap and throws it
-		return remove(min());
+		if (_metrics == null) {
+			return removeEntry(min());
+		}
+		long start = System.nanoTime();
+		Entry<K, V> entry = removeEntry(min());
+		_metrics.recordLatency(HeapMetrics.Operation.REMOVE_MIN, System.nanoTime() - start);
+		return entry;
+	}
+
+	/**
+	 * Returns an iterator over the entries in key order that leaves the heap
+	 * as it is. Starting from the root, a frontier heap holds the positions
+	 * whose parents have already been returned; the smallest of them is
+	 * returned next and its children join the frontier. The first k entries
+	 * therefore cost O(k log k) time, and the whole heap O(n log n). The
+	 * insert buffer is merged first. The heap must not be changed while the
+	 * iterator is in use.
+	 * 
+	 * @return the entries, smallest key first
+	 */
+	public Iterator<Entry<K, V>> sortedIterator() {
+		flush();
+		return new SortedIterator(16);
+	}
+
+	/**
+	 * Returns a Spliterator over the entries in no particular order. It walks
+	 * the tree and splits by subtree, handing one child's subtree to the new
+	 * Spliterator, so a parallel stream can spread a large heap over several
+	 * cores. The insert buffer is merged first. The heap must not be changed
+	 * while the Spliterator is in use.
+	 */
+	public Spliterator<Entry<K, V>> spliterator() {
+		flush();
+		ArrayDeque<Position<MyHeapEntry<K, V>>> subtrees = new ArrayDeque<Position<MyHeapEntry<K, V>>>();
+		if (!_tree.isEmpty()) {
+			subtrees.add(_tree.root());
+		}
+		return new SubtreeSpliterator(subtrees, _tree.size());
+	}
+
+	/**
+	 * @return a sequential stream of the entries in no particular order
+	 */
+	public Stream<Entry<K, V>> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	/**
+	 * @return a parallel stream of the entries in no particular order
+	 */
+	public Stream<Entry<K, V>> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
+
+	/**
+	 * Removes and returns the k entries with the smallest keys, in key order
+	 * (or every entry, if there are fewer than k). The restructuring is paid
+	 * once for the whole batch instead of k times from the root. The k
+	 * smallest entries are found without touching the tree by walking a
+	 * frontier of positions in O(k log k) time. Since a parent is never
+	 * larger than its children, the positions they leave empty form a subtree
+	 * at the top of the tree. The last k nodes of the tree are pruned, the
+	 * entries they held that stay fill those holes, and each hole is sorted
+	 * down, deepest first, as in heapify() but over the holes only. This
+	 * costs O(k log(n/k)) time on top of the frontier walk, and nothing is
+	 * allocated in proportion to n.
+	 * 
+	 * @param k
+	 *            the maximum number of entries to remove
+	 * @return the removed entries, smallest key first
+	 * @throws IllegalArgumentException
+	 *             if k is negative
+	 */
+	public List<Entry<K, V>> removeMin(int k) throws IllegalArgumentException {
+		if (k < 0) {
+			throw new IllegalArgumentException("negative batch size");
+		}
+		flush();
+		k = Math.min(k, _tree.size());
+		List<MyHeapEntry<K, V>> smallest = smallest(k);
+		for (MyHeapEntry<K, V> entry : smallest) {
+			entry.set_heap(null);
+			unindexValue(entry);
+		}
+
+		// the last k nodes go; the entries on them that stay are left over,
+		// and a removed entry on them leaves no hole to fill
+		ArrayDeque<MyHeapEntry<K, V>> leftover = new ArrayDeque<MyHeapEntry<K, V>>();
+		for (int i = 0; i < k; i++) {
+			MyHeapEntry<K, V> last = _tree.remove();
+			if (last.get_heap() == null) {
+				last.set_position(null);
+			} else {
+				leftover.add(last);
+			}
+		}
+
+		// key order lists every parent before its children, so going through
+		// it backwards sorts down each hole after the holes below it
+		for (int i = k - 1; i >= 0; i--) {
+			MyHeapEntry<K, V> entry = smallest.get(i);
+			Position<MyHeapEntry<K, V>> hole = entry.get_position();
+			if (hole != null) {
+				entry.set_position(null);
+				moveEntry(leftover.removeFirst(), hole);
+				downSort(hole);
+			}
+		}
+		return new ArrayList<Entry<K, V>>(smallest);
+	}
+
+	/**
+	 * Removes at most the given number of entries with the smallest keys and
+	 * adds them, in key order, to the given collection. Works like
+	 * removeMin(int).
+	 * 
+	 * @param collection
+	 *            the collection to add the removed entries to
+	 * @param maxEntries
+	 *            the maximum number of entries to remove
+	 * @return the number of entries removed
+	 * @throws IllegalArgumentException
+	 *             if maxEntries is negative
+	 */
+	public int drainTo(Collection<? super Entry<K, V>> collection, int maxEntries) throws IllegalArgumentException {
+		List<Entry<K, V>> removed = removeMin(maxEntries);
+		collection.addAll(removed);
+		return removed.size();
+	}
+
+	/**
+	 * Writes the heap to a file in a compact binary format: a header with the
+	 * number of entries, followed by the entries of the tree in level order,
+	 * each as the int length of its key and value bytes followed by the key
+	 * and then the value. Because a heap-ordered complete tree listed in level
+	 * order is enough to rebuild it exactly, restore() needs no comparisons.
+	 * The insert buffer is merged first. This method runs in O(n) time.
+	 * 
+	 * The file is written through a single memory-mapped buffer, so a
+	 * snapshot can be at most Integer.MAX_VALUE bytes (2 GB) long; a larger
+	 * heap is refused before the file is touched.
+	 * 
+	 * @param file
+	 *            the file to write, replaced if it exists
+	 * @param keySerializer
+	 *            writes the keys
+	 * @param valueSerializer
+	 *            writes the values
+	 * @throws IOException
+	 *             if the file cannot be written, or the snapshot would be
+	 *             larger than 2 GB
+	 */
+	public void snapshot(Path file, HeapSerializer<K> keySerializer, HeapSerializer<V> valueSerializer)
+			throws IOException {
+		flush();
+		List<Position<MyHeapEntry<K, V>>> positions = levelOrderPositions();
+		long total = 12;
+		for (Position<MyHeapEntry<K, V>> position : positions) {
+			MyHeapEntry<K, V> entry = position.element();
+			total += 4 + keySerializer.size(entry.getKey()) + valueSerializer.size(entry.getValue());
+		}
+		if (total > Integer.MAX_VALUE) {
+			throw new IOException("snapshot of " + total + " bytes is larger than 2 GB");
+		}
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, total);
+			buffer.putInt(SNAPSHOT_MAGIC);
+			buffer.putInt(SNAPSHOT_VERSION);
+			buffer.putInt(positions.size());
+			for (Position<MyHeapEntry<K, V>> position : positions) {
+				MyHeapEntry<K, V> entry = position.element();
+				buffer.putInt(keySerializer.size(entry.getKey()) + valueSerializer.size(entry.getValue()));
+				keySerializer.write(entry.getKey(), buffer);
+				valueSerializer.write(entry.getValue(), buffer);
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds a heap written by snapshot() into a MyLinkedHeapTree. See the
+	 * four argument version.
+	 */
+	public static <K, V> MyHeap<K, V> restore(Path file, Comparator<K> comparator, HeapSerializer<K> keySerializer,
+			HeapSerializer<V> valueSerializer) throws IOException {
+		return restore(file, comparator, keySerializer, valueSerializer,
+				new MyLinkedHeapTree<MyHeapEntry<K, V>>());
+	}
+
+	/**
+	 * Rebuilds a heap written by snapshot() into the given empty tree. The
+	 * file is memory-mapped and its entries are added to the tree in the order
+	 * they were written, which is already heap order, so nothing is compared
+	 * or sorted. This method runs in O(n) time.
+	 * 
+	 * @param file
+	 *            a file written by snapshot()
+	 * @param comparator
+	 *            the comparator to be used for heap keys, which must order
+	 *            keys the same way as the one of the heap that was saved
+	 * @param keySerializer
+	 *            reads the keys
+	 * @param valueSerializer
+	 *            reads the values
+	 * @param tree
+	 *            an empty tree to hold the heap entries
+	 * @return the restored heap
+	 * @throws IOException
+	 *             if the file cannot be read, is not a heap snapshot or is
+	 *             truncated or corrupt
+	 * @throws InvalidKeyException
+	 *             if the file holds a key that is not suitable for a heap
+	 */
+	public static <K, V> MyHeap<K, V> restore(Path file, Comparator<K> comparator, HeapSerializer<K> keySerializer,
+			HeapSerializer<V> valueSerializer, CompleteBinaryTree<MyHeapEntry<K, V>> tree)
+			throws IOException, InvalidKeyException {
+		MyHeap<K, V> heap = new MyHeap<K, V>(comparator, tree);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("not a heap snapshot: " + file);
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < 12 || buffer.getInt() != SNAPSHOT_MAGIC
+					|| buffer.getInt() != SNAPSHOT_VERSION) {
+				throw new IOException("not a heap snapshot: " + file);
+			}
+			int count = buffer.getInt();
+			if (count < 0 || count > buffer.remaining() / 4) {
+				throw new IOException("corrupt heap snapshot: " + file);
+			}
+			for (int i = 0; i < count; i++) {
+				// each record must fit in the file and be read exactly
+				int length = buffer.remaining() < 4 ? -1 : buffer.getInt();
+				if (length < 0 || length > buffer.remaining()) {
+					throw new IOException("corrupt heap snapshot: " + file);
+				}
+				int end = buffer.position() + length;
+				buffer.limit(end);
+				K key;
+				V value;
+				try {
+					key = keySerializer.read(buffer);
+					value = valueSerializer.read(buffer);
+				} catch (RuntimeException e) {
+					throw new IOException("corrupt heap snapshot: " + file, e);
+				}
+				if (buffer.position() != end) {
+					throw new IOException("corrupt heap snapshot: " + file);
+				}
+				buffer.limit(buffer.capacity());
+				checkKey(key);
+				MyHeapEntry<K, V> entry = new MyHeapEntry<K, V>(key, value);
+				entry.set_heap(heap);
+				entry.set_position(tree.add(entry));
+			}
+		}
+		return heap;
 	}
 
 	/**
@@ -164,25 +934,61 @@ public class MyHeap<K, V> implements HeapWrapper<K, V>, AdaptablePriorityQueue<K
 	 *            to be removed from the heap
 	 * @return the entry specified for removal by the parameter
 	 * @throws InvalidEntryException
-	 *             if the entry cannot be removed from this heap
+	 *             if the entry cannot be removed from this heap, or has been
+	 *             recycled
 	 */
 	public Entry<K, V> remove(Entry<K, V> entry) throws InvalidEntryException {
-		MyHeapEntry<K, V> checkedEntry = this.checkAndConvertEntry(entry);
+		checkNotReused(entry);
+		return removeTimed(entry);
+	}
+
+	// times removeEntry() when metrics are on
+	private Entry<K, V> removeTimed(Entry<K, V> entry) throws InvalidEntryException {
+		if (_metrics == null) {
+			return removeEntry(entry);
+		}
+		long start = System.nanoTime();
+		Entry<K, V> removed = removeEntry(entry);
+		_metrics.recordLatency(HeapMetrics.Operation.REMOVE, System.nanoTime() - start);
+		return removed;
+	}
 
-		if (isEmpty() || checkedEntry.get_position() == null) {
+	// does the work of remove() and removeMin(), which time it when metrics are on
+	private Entry<K, V> removeEntry(Entry<K, V> entry) throws InvalidEntryException {
+		MyHeapEntry<K, V> checkedEntry = checkOwnedEntry(entry);
+
+		if (isBuffered(checkedEntry)) {
+			// nothing to sort, move the last buffered entry into its slot
+			int index = checkedEntry.get_index();
+			MyHeapEntry<K, V> lastBuffered = _buffer.remove(_buffer.size() - 1);
+			if (lastBuffered != checkedEntry) {
+				_buffer.set(index, lastBuffered);
+				lastBuffered.set_index(index);
+			}
+			checkedEntry.set_index(-1);
+			checkedEntry.set_heap(null);
+			unindexValue(checkedEntry);
+			return checkedEntry;
+		}
+		if (_tree.isEmpty() || checkedEntry.get_position() == null) {
 			throw new InvalidEntryException("entry not in tree");
 		}
 
+		Position<MyHeapEntry<K, V>> hole = checkedEntry.get_position();
 		// prune last node of tree
 		MyHeapEntry<K, V> last = _tree.remove();
+		checkedEntry.set_position(null);
+		checkedEntry.set_heap(null);
+		unindexValue(checkedEntry);
 
-		if (_tree.size() > 0) {
-			swapValuesandKeys(checkedEntry, last);
-			downSort(checkedEntry.get_position());
-			upSort(checkedEntry.get_position());
+		// unless the removed entry was the last node, refill its hole with the
+		// entry pruned from the end and sort that entry into place
+		if (last != checkedEntry) {
+			moveEntry(last, hole);
+			resort(hole);
 		}
 
-		return last;
+		return checkedEntry;
 	}
 
 	/**
@@ -195,23 +1001,48 @@ public class MyHeap<K, V> implements HeapWrapper<K, V>, AdaptablePriorityQueue<K
 	 *            to replace the existing key in the entry
 	 * @return the old key formerly associated with the entry
 	 * @throws InvalidEntryException
-	 *             if the entry is invalid
+	 *             if the entry is invalid or has been recycled
 	 * @throws InvalidKeyException
 	 *             if the key is invalid
 	 */
 	public K replaceKey(Entry<K, V> entry, K key) throws InvalidEntryException, InvalidKeyException {
-		// throws InvalidEntryException when necessary
-		MyHeapEntry<K, V> checkedEntry = this.checkAndConvertEntry(entry);
-		if ((int) key < 1 || (int) key > 99) {
-			throw new InvalidKeyException("key is not in appropriate range");
+		checkNotReused(entry);
+		return replaceKeyTimed(entry, key);
+	}
+
+	// times replaceEntryKey() when metrics are on
+	private K replaceKeyTimed(Entry<K, V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		if (_metrics == null) {
+			return replaceEntryKey(entry, key);
 		}
+		long start = System.nanoTime();
+		K oldKey = replaceEntryKey(entry, key);
+		_metrics.recordLatency(HeapMetrics.Operation.REPLACE_KEY, System.nanoTime() - start);
+		return oldKey;
+	}
+
+	// does the work of replaceKey(), which times it when metrics are on
+	private K replaceEntryKey(Entry<K, V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		// throws InvalidEntryException when necessary
+		MyHeapEntry<K, V> checkedEntry = checkOwnedEntry(entry);
+		checkKey(key);
 
 		K oldKey = checkedEntry.getKey();
+		if (isBuffered(checkedEntry)) {
+			// buffered entries are unsorted, the new key is used when merged
+			checkedEntry.setKey(key);
+			normalize(checkedEntry);
+			return oldKey;
+		}
+		if (checkedEntry.get_position() == null) {
+			throw new InvalidEntryException("entry not in tree");
+		}
+
 		checkedEntry.setKey(key);
+		normalize(checkedEntry);
 
 		// sort if new key is larger or smaller than child
-		downSort(checkedEntry.get_position());
-		upSort(checkedEntry.get_position());
+		resort(checkedEntry.get_position());
 
 		return oldKey;
 	}
@@ -225,13 +1056,31 @@ public class MyHeap<K, V> implements HeapWrapper<K, V>, AdaptablePriorityQueue<K
 	 *            to replace the existing value in the entry
 	 * @return the old value formerly associated with the entry
 	 * @throws InvalidEntryException
-	 *             if the entry cannot have its value replaced
+	 *             if the entry cannot have its value replaced, or has been
+	 *             recycled
+	 * @throws IllegalArgumentException
+	 *             if the value index is on and another entry holds the value
 	 */
 	public V replaceValue(Entry<K, V> entry, V value) throws InvalidEntryException {
+		checkNotReused(entry);
+		return replaceEntryValue(entry, value);
+	}
+
+	// does the work of both replaceValue() variants
+	private V replaceEntryValue(Entry<K, V> entry, V value) throws InvalidEntryException {
 		// throws InvalidEntryException if needed
-		MyHeapEntry<K, V> checkedEntry = this.checkAndConvertEntry(entry);
+		MyHeapEntry<K, V> checkedEntry = checkOwnedEntry(entry);
 
 		V oldVal = checkedEntry.getValue();
+		if (_values != null) {
+			if (_values.get(value) != checkedEntry) {
+				checkNewValue(value);
+				_values.remove(oldVal);
+				checkedEntry.setValue(value);
+				indexValue(checkedEntry);
+			}
+			return oldVal;
+		}
 		checkedEntry.setValue(value);
 
 		return oldVal;
@@ -265,72 +1114,504 @@ public class MyHeap<K, V> implements HeapWrapper<K, V>, AdaptablePriorityQueue<K
 	 */
 
 	/**
-	 * Reorder a position with respect to it's children. Walk down the tree,
-	 * swapping with any child node that has a smaller key.
+	 * Creates an entry for insert(), reusing a released one if recycling is
+	 * on and there is one.
+	 */
+	MyHeapEntry<K, V> newEntry(K key, V value) {
+		MyHeapEntry<K, V> entry = _free == null ? null : _free.pollLast();
+		if (entry == null) {
+			return new MyHeapEntry<K, V>(key, value);
+		}
+		entry._generation++;
+		entry.setKey(key);
+		entry.setValue(value);
+		return entry;
+	}
+
+	/**
+	 * Clears an entry that was removed and is not handed to anyone, moves its
+	 * generation on and keeps it for reuse if the pool has room. Does nothing
+	 * if recycling is off.
+	 */
+	void recycle(MyHeapEntry<K, V> entry) {
+		if (_free == null) {
+			return;
+		}
+		entry._generation++;
+		entry.setKey(null);
+		entry.setValue(null);
+		if (_free.size() < _freeCapacity) {
+			_free.add(entry);
+		}
+	}
+
+	private void checkGeneration(Entry<K, V> entry, int generation) throws InvalidEntryException {
+		if (checkAndConvertEntry(entry).get_generation() != generation) {
+			throw new InvalidEntryException("entry was released");
+		}
+	}
+
+	/**
+	 * Rejects an entry that has been released and reused: a handle to it may
+	 * be stale, so it has to come with its generation.
+	 */
+	private void checkNotReused(Entry<K, V> entry) throws InvalidEntryException {
+		if (checkAndConvertEntry(entry).get_generation() != 0) {
+			throw new InvalidEntryException("entry was recycled, pass its generation");
+		}
+	}
+
+	/**
+	 * Converts an entry like checkAndConvertEntry() and makes sure this heap
+	 * holds it, so that an entry of another heap, or one that was removed,
+	 * cannot be used to change this heap's tree or value index.
 	 * 
-	 * @param position
-	 *            a (hopefully) freshly swapped position
+	 * @throws InvalidEntryException
+	 *             if the entry is not of the proper class or not in this heap
 	 */
-	public void downSort(Position<MyHeapEntry<K, V>> position) {
-		Boolean possibleSmallerChild = true;
-		while (possibleSmallerChild) {
-			// no children left
-			if (!_tree.hasLeft(position)) {
-				break;
+	private MyHeapEntry<K, V> checkOwnedEntry(Entry<K, V> entry) throws InvalidEntryException {
+		MyHeapEntry<K, V> checkedEntry = checkAndConvertEntry(entry);
+		if (checkedEntry.get_heap() != this) {
+			throw new InvalidEntryException("entry not in heap");
+		}
+		return checkedEntry;
+	}
+
+	/**
+	 * @return whether the entry is waiting in this heap's insert buffer
+	 */
+	private boolean isBuffered(MyHeapEntry<K, V> entry) {
+		int index = entry.get_index();
+		return _buffer != null && index >= 0 && index < _buffer.size() && _buffer.get(index) == entry;
+	}
+
+	/**
+	 * @return the value index
+	 * @throws IllegalStateException
+	 *             if the value index is off
+	 */
+	private HashMap<V, MyHeapEntry<K, V>> valueIndex() throws IllegalStateException {
+		if (_values == null) {
+			throw new IllegalStateException("value index is off");
+		}
+		return _values;
+	}
+
+	/**
+	 * @return the entry holding the value
+	 * @throws InvalidEntryException
+	 *             if no entry holds the value
+	 */
+	private MyHeapEntry<K, V> entryFor(V value) throws IllegalStateException, InvalidEntryException {
+		MyHeapEntry<K, V> entry = valueIndex().get(value);
+		if (entry == null) {
+			throw new InvalidEntryException("no entry holds value " + value);
+		}
+		return entry;
+	}
+
+	/**
+	 * Makes sure a value can be added while the value index is on.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if an entry already holds the value
+	 */
+	private void checkNewValue(V value) throws IllegalArgumentException {
+		if (_values != null && _values.containsKey(value)) {
+			throw new IllegalArgumentException("duplicate value: " + value);
+		}
+	}
+
+	/**
+	 * Makes sure a batch of values can be added while the value index is on.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if an entry already holds one of the values, or the batch
+	 *             holds the same value twice
+	 */
+	private void checkNewValues(Collection<? extends Entry<K, V>> entries) throws IllegalArgumentException {
+		if (_values == null) {
+			return;
+		}
+		HashMap<V, Boolean> batch = new HashMap<V, Boolean>(entries.size() * 2);
+		for (Entry<K, V> pair : entries) {
+			checkNewValue(pair.getValue());
+			if (batch.put(pair.getValue(), Boolean.TRUE) != null) {
+				throw new IllegalArgumentException("duplicate value: " + pair.getValue());
 			}
+		}
+	}
 
-			// has children
-			Position<MyHeapEntry<K, V>> smallerPosition;
-			if (_tree.hasRight(position) && (_comparator.compare(_tree.right(position).element().getKey(),
-					_tree.left(position).element().getKey()) < 0)) {
-				smallerPosition = _tree.right(position);
-			} else {
-				smallerPosition = _tree.left(position);
+	private void indexValue(MyHeapEntry<K, V> entry) {
+		if (_values != null) {
+			_values.put(entry.getValue(), entry);
+		}
+	}
+
+	private void unindexValue(MyHeapEntry<K, V> entry) {
+		if (_values != null) {
+			_values.remove(entry.getValue());
+		}
+	}
+
+	/**
+	 * Compares the keys of two entries of this heap: by their prefixes if
+	 * there is a key normalizer, and with the comparator if there is none or
+	 * the prefixes are equal. Every comparison made while sorting goes
+	 * through here.
+	 */
+	private int compare(MyHeapEntry<K, V> first, MyHeapEntry<K, V> second) {
+		if (_normalizer != null) {
+			int order = Long.compareUnsigned(first._prefix, second._prefix);
+			if (order != 0 || _normalizer.isExact()) {
+				return order;
 			}
+		}
+		return _comparator.compare(first.getKey(), second.getKey());
+	}
 
-			// attempt to swap child
-			if (_comparator.compare(position.element().getKey(), smallerPosition.element().getKey()) > 0) {
-				// swap elements
-				swapValuesandKeys(position.element(), smallerPosition.element());
-				// new position to check is old position of smaller child
-				position = smallerPosition;
-			} else {
-				possibleSmallerChild = false;
+	/**
+	 * Stores the prefix of the entry's key if there is a key normalizer.
+	 */
+	private void normalize(MyHeapEntry<K, V> entry) {
+		if (_normalizer != null) {
+			entry._prefix = _normalizer.prefix(entry.getKey());
+		}
+	}
+
+	/**
+	 * Compares two keys with this heap's comparator.
+	 */
+	int compareKeys(K first, K second) {
+		return _comparator.compare(first, second);
+	}
+
+	/**
+	 * Puts a new entry into the root in place of the minimum, sorts it down
+	 * and returns the old minimum, now removed. A single downSort() instead of
+	 * a removeMin() followed by an insert(), and the tree neither shrinks nor
+	 * grows. The heap must not be empty and the key must already be checked.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the value index is on and another entry holds the value
+	 */
+	MyHeapEntry<K, V> replaceMin(MyHeapEntry<K, V> entry) throws IllegalArgumentException {
+		flush();
+		Position<MyHeapEntry<K, V>> root = _tree.root();
+		MyHeapEntry<K, V> min = root.element();
+		if (_values != null && _values.get(entry.getValue()) != min) {
+			checkNewValue(entry.getValue());
+		}
+		min.set_position(null);
+		min.set_heap(null);
+		unindexValue(min);
+		entry.set_heap(this);
+		normalize(entry);
+		indexValue(entry);
+		moveEntry(entry, root);
+		downSort(root);
+		return min;
+	}
+
+	/**
+	 * Makes sure a key is suitable for a heap: keys are never null, and int
+	 * keys are in the range 1..99. Keys of any other type, such as the long
+	 * deadlines of a TimerScheduler, are ordered by the comparator alone.
+	 * Shared by the other priority queues in this package so they all accept
+	 * the same keys.
+	 * 
+	 * @throws InvalidKeyException
+	 *             if the key is null or an int out of range
+	 */
+	static <K> void checkKey(K key) throws InvalidKeyException {
+		if (key == null) {
+			throw new InvalidKeyException("null key");
+		}
+		if (key instanceof Integer && ((Integer) key < 1 || (Integer) key > 99)) {
+			throw new InvalidKeyException("key out of appropriate range");
+		}
+	}
+
+	/**
+	 * Sorts the entry at the given position into place after its key changed
+	 * or it was moved into a hole, in whichever direction its key requires.
+	 * 
+	 * @return the position the entry comes to rest at
+	 */
+	public Position<MyHeapEntry<K, V>> resort(Position<MyHeapEntry<K, V>> position) {
+		if (!_tree.isRoot(position) && compare(position.element(), _tree.parent(position).element()) < 0) {
+			return upSort(position);
+		}
+		return downSort(position);
+	}
+
+	/**
+	 * Appends the given entries to the tree in one pass and restores heap
+	 * order according to the policy: SIFT sorts each of the m entries up,
+	 * HEAPIFY rebuilds the whole tree bottom-up, and ADAPTIVE heapifies only
+	 * when m log(n + m) would cost more than n + m.
+	 */
+	private void addAndSort(List<MyHeapEntry<K, V>> entries, FlushPolicy policy) {
+		for (MyHeapEntry<K, V> entry : entries) {
+			entry.set_heap(this);
+			entry.set_position(_tree.add(entry));
+		}
+
+		int size = _tree.size();
+		boolean sift = policy == FlushPolicy.SIFT || (policy == FlushPolicy.ADAPTIVE
+				&& (long) entries.size() * (32 - Integer.numberOfLeadingZeros(size)) < size);
+		if (sift) {
+			for (MyHeapEntry<K, V> entry : entries) {
+				upSort(entry.get_position());
+			}
+		} else {
+			heapify();
+		}
+	}
+
+	/**
+	 * Returns the k entries of the tree with the smallest keys in key order,
+	 * without changing the tree, by taking the first k entries of a
+	 * SortedIterator. This runs in O(k log k) time.
+	 */
+	private List<MyHeapEntry<K, V>> smallest(int k) {
+		List<MyHeapEntry<K, V>> smallest = new ArrayList<MyHeapEntry<K, V>>(k);
+		if (k == 0) {
+			return smallest;
+		}
+		SortedIterator iterator = new SortedIterator(2 * k + 1);
+		while (smallest.size() < k) {
+			smallest.add(iterator.nextEntry());
+		}
+		return smallest;
+	}
+
+	/**
+	 * Restores heap order over the whole tree bottom-up: every internal node,
+	 * from the last one back to the root, is sorted down into its subtree.
+	 * This runs in O(n) time.
+	 */
+	private void heapify() {
+		List<Position<MyHeapEntry<K, V>>> positions = levelOrderPositions();
+		for (int i = positions.size() / 2 - 1; i >= 0; i--) {
+			downSort(positions.get(i));
+		}
+	}
+
+	/**
+	 * Returns every position of the tree in level order, which is the order
+	 * in which a complete binary tree is filled.
+	 */
+	private List<Position<MyHeapEntry<K, V>>> levelOrderPositions() {
+		List<Position<MyHeapEntry<K, V>>> positions = new ArrayList<Position<MyHeapEntry<K, V>>>(_tree.size());
+		if (_tree.isEmpty()) {
+			return positions;
+		}
+		ArrayDeque<Position<MyHeapEntry<K, V>>> queue = new ArrayDeque<Position<MyHeapEntry<K, V>>>();
+		queue.add(_tree.root());
+		while (!queue.isEmpty()) {
+			Position<MyHeapEntry<K, V>> position = queue.removeFirst();
+			positions.add(position);
+			if (_tree.hasLeft(position)) {
+				queue.add(_tree.left(position));
+				if (_tree.hasRight(position)) {
+					queue.add(_tree.right(position));
+				}
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * Reorder a position with respect to it's children. Walk down the tree
+	 * with the entry at the position as a "hole": every child with a smaller
+	 * key is moved one level up into the hole, and the entry itself is only
+	 * written once, into the position where it comes to rest.
+	 * 
+	 * @param position
+	 *            a (hopefully) freshly filled position
+	 * @return the position the entry comes to rest at
+	 */
+	public Position<MyHeapEntry<K, V>> downSort(Position<MyHeapEntry<K, V>> position) {
+		MyHeapEntry<K, V> entry = position.element();
+		int depth = 0;
+		// no children left means the entry can rest here
+		while (_tree.hasLeft(position)) {
+			Position<MyHeapEntry<K, V>> smallerPosition = _tree.left(position);
+			if (_tree.hasRight(position)) {
+				Position<MyHeapEntry<K, V>> right = _tree.right(position);
+				if (compare(right.element(), smallerPosition.element()) < 0) {
+					smallerPosition = right;
+				}
+			}
+
+			if (compare(entry, smallerPosition.element()) <= 0) {
+				break;
 			}
+			// the smaller child moves up, the hole moves down
+			moveEntry(smallerPosition.element(), position);
+			position = smallerPosition;
+			depth++;
 		}
+		moveEntry(entry, position);
+		if (_metrics != null) {
+			_metrics.recordSiftDown(depth);
+		}
+		return position;
 	}
 
 	/**
 	 * linearly updates the parents if the node that has been added with a key
-	 * smaller than its parent's swap with parent
+	 * smaller than its parent's: every such parent is moved one level down into
+	 * the hole, and the entry is written once where it comes to rest
+	 * 
+	 * @return the position the entry comes to rest at
 	 */
 	public Position<MyHeapEntry<K, V>> upSort(Position<MyHeapEntry<K, V>> p) {
+		MyHeapEntry<K, V> entry = p.element();
+		int depth = 0;
+		while (!_tree.isRoot(p)) {
+			Position<MyHeapEntry<K, V>> parent = _tree.parent(p);
+			if (compare(entry, parent.element()) >= 0) {
+				break;
+			}
+			moveEntry(parent.element(), p);
+			p = parent;
+			depth++;
+		}
+		moveEntry(entry, p);
+		if (_metrics != null) {
+			_metrics.recordSiftUp(depth);
+		}
+		return p;
+	}
+
+	/**
+	 * stores an entry at the given position of the tree and lets the entry
+	 * know where it now lives, without sorting
+	 */
+	private void moveEntry(MyHeapEntry<K, V> entry, Position<MyHeapEntry<K, V>> position) {
+		_tree.replace(position, entry);
+		entry.set_position(position);
+	}
+
+	/*
+	 * Walks the tree in key order with a frontier heap of positions, see
+	 * sortedIterator().
+	 */
+	private class SortedIterator implements Iterator<Entry<K, V>> {
 
-		Position<MyHeapEntry<K, V>> restingPosition = p;
-		try {
-			while (!_tree.isRoot(p)
-					&& _comparator.compare(p.element().getKey(), _tree.parent(p).element().getKey()) < 0) {
-				swapValuesandKeys(p.element(), _tree.parent(p).element());
-				p = _tree.parent(p);
-				restingPosition = p;
+		private final MyHeap<K, Position<MyHeapEntry<K, V>>> _frontier;
+
+		private SortedIterator(int capacity) {
+			// the walk leaves the heap as it is, so it is not counted into
+			// the heap's metrics
+			_frontier = new MyHeap<K, Position<MyHeapEntry<K, V>>>(HeapMetrics.unwrap(_comparator),
+					new MyArrayHeapTree<MyHeapEntry<K, Position<MyHeapEntry<K, V>>>>(capacity));
+			_frontier.setKeyNormalizer(_normalizer);
+			if (!_tree.isEmpty()) {
+				_frontier.insert(_tree.root().element().getKey(), _tree.root());
 			}
-		} catch (BoundaryViolationException e) {
+		}
+
+		public boolean hasNext() {
+			return !_frontier.isEmpty();
+		}
+
+		public Entry<K, V> next() {
+			return nextEntry();
+		}
 
+		private MyHeapEntry<K, V> nextEntry() {
+			if (_frontier.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			Position<MyHeapEntry<K, V>> position = _frontier.removeMin().getValue();
+			if (_tree.hasLeft(position)) {
+				Position<MyHeapEntry<K, V>> left = _tree.left(position);
+				_frontier.insert(left.element().getKey(), left);
+				if (_tree.hasRight(position)) {
+					Position<MyHeapEntry<K, V>> right = _tree.right(position);
+					_frontier.insert(right.element().getKey(), right);
+				}
+			}
+			return position.element();
 		}
-		return restingPosition;
 	}
 
-	/**
-	 * swamps elements and keys of two given entries without sorting
+	/*
+	 * Visits whole subtrees of the tree, see spliterator(). _subtrees holds the
+	 * roots of the subtrees still to visit and _nodes single positions whose
+	 * subtrees were handed out by trySplit().
 	 */
-	public void swapValuesandKeys(MyHeapEntry<K, V> first, MyHeapEntry<K, V> second) {
-		K oldKey = first.getKey();
-		V oldVal = first.getValue();
+	private class SubtreeSpliterator implements Spliterator<Entry<K, V>> {
+
+		private final ArrayDeque<Position<MyHeapEntry<K, V>>> _subtrees;
+		private final ArrayDeque<Position<MyHeapEntry<K, V>>> _nodes;
+		private long _estimate;
+
+		private SubtreeSpliterator(ArrayDeque<Position<MyHeapEntry<K, V>>> subtrees, long estimate) {
+			_subtrees = subtrees;
+			_nodes = new ArrayDeque<Position<MyHeapEntry<K, V>>>();
+			_estimate = estimate;
+		}
+
+		public boolean tryAdvance(Consumer<? super Entry<K, V>> action) {
+			Position<MyHeapEntry<K, V>> position = _nodes.pollLast();
+			if (position == null) {
+				position = _subtrees.pollLast();
+				if (position == null) {
+					return false;
+				}
+				if (_tree.hasLeft(position)) {
+					_subtrees.addLast(_tree.left(position));
+					if (_tree.hasRight(position)) {
+						_subtrees.addLast(_tree.right(position));
+					}
+				}
+			}
+			if (_estimate > 0) {
+				_estimate--;
+			}
+			action.accept(position.element());
+			return true;
+		}
+
+		public Spliterator<Entry<K, V>> trySplit() {
+			// with several subtrees left, hand over the older half of them
+			if (_subtrees.size() > 1) {
+				ArrayDeque<Position<MyHeapEntry<K, V>>> half = new ArrayDeque<Position<MyHeapEntry<K, V>>>();
+				for (int i = _subtrees.size() / 2; i > 0; i--) {
+					half.addLast(_subtrees.pollFirst());
+				}
+				return split(half);
+			}
+			// with a single subtree, keep its root and left subtree and hand
+			// over the right subtree
+			Position<MyHeapEntry<K, V>> position = _subtrees.peekFirst();
+			if (position == null || !_tree.hasRight(position)) {
+				return null;
+			}
+			_subtrees.pollFirst();
+			_nodes.addLast(position);
+			_subtrees.addLast(_tree.left(position));
+			ArrayDeque<Position<MyHeapEntry<K, V>>> right = new ArrayDeque<Position<MyHeapEntry<K, V>>>();
+			right.add(_tree.right(position));
+			return split(right);
+		}
 
-		first.setKey(second.getKey());
-		first.setValue(second.getValue());
+		private Spliterator<Entry<K, V>> split(ArrayDeque<Position<MyHeapEntry<K, V>>> subtrees) {
+			long half = _estimate / 2;
+			_estimate -= half;
+			return new SubtreeSpliterator(subtrees, half);
+		}
 
-		second.setKey(oldKey);
-		second.setValue(oldVal);
+		public long estimateSize() {
+			return _estimate;
+		}
+
+		public int characteristics() {
+			return NONNULL;
+		}
 	}
 }
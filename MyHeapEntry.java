@@ -20,8 +20,15 @@ public class MyHeapEntry<K, V> implements Entry<K, V> {
 	K key;
 	V value;
 	Position<MyHeapEntry<K, V>> _position;
+	// slot of the entry in an array (array-stored heaps, MyHeap's insert buffer), -1 if none
+	int _index = -1;
+	// the MyHeap currently holding the entry, null once removed
+	MyHeap<K, V> _heap;
+	// sort prefix of the key when the heap has a KeyNormalizer, see MyHeap.setKeyNormalizer()
+	long _prefix;
+	// bumped each time a recycling MyHeap releases or reuses the entry, odd while released
+	int _generation;
 
-	
 
 	/**
 	 * Default constructor. You may wish to modify the parameters.
@@ -78,4 +85,32 @@ public class MyHeapEntry<K, V> implements Entry<K, V> {
 	public void set_position(Position<MyHeapEntry<K, V>> position) {
 		this._position = position;
 	}
+
+	public int get_index() {
+		return _index;
+	}
+
+	public void set_index(int index) {
+		this._index = index;
+	}
+
+	public MyHeap<K, V> get_heap() {
+		return _heap;
+	}
+
+	public void set_heap(MyHeap<K, V> heap) {
+		this._heap = heap;
+	}
+
+	public long get_prefix() {
+		return _prefix;
+	}
+
+	public void set_prefix(long prefix) {
+		this._prefix = prefix;
+	}
+
+	public int get_generation() {
+		return _generation;
+	}
 }
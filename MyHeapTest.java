@@ -5,15 +5,30 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
 
 import org.junit.Ignore;
 import org.junit.Test;
 
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.CompleteBinaryTree;
 import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+import net.datastructures.Position;
 
 /**
  * This class can be used to test the functionality of your MyHeap
@@ -31,74 +46,17 @@ import net.datastructures.Entry;
  * (ex: instantiate a heap and insert K,V pairs into it) - Use assertions to
  * validate that the program is in the state you expect it to be
  * 
- * We've given you four example of test cases below that should help you
- * understand syntax and the general structure of tests.
+ * We've given you four example of test cases that should help you understand
+ * syntax and the general structure of tests. Three of them are in
+ * AdaptablePriorityQueueTest, which holds the cases every heap has to pass and
+ * runs them against the heap returned by newHeap(); the cases below are
+ * specific to MyHeap.
  */
-public class MyHeapTest {
+public class MyHeapTest extends AdaptablePriorityQueueTest {
 
-	/**
-	 * A simple test to ensure that insert() works.
-	 */
-	@Test
-	public void testInsertOneElement() {
-		// set-up
-		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		heap.insert(1, "A");
-
-		// Assert that your data structure is consistent using
-		// assertThat(actual, is(expected))
-		assertThat(heap.size(), is(1));
-		assertThat(heap.min().getKey(), is(1));
-	}
-
-	/**
-	 * This is an example to check that the order of the heap is sorted as per
-	 * the keys by comparing a list of the actual and expected keys.
-	 */
-	@Test
-	public void testRemoveMinHeapOrderUsingList() {
-		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		heap.insert(11, "A");
-		heap.insert(13, "B");
-		heap.insert(64, "C");
-		heap.insert(16, "D");
-		heap.insert(44, "E");
-
-		// the expected ordering that keys come in
-		List<Integer> expectedKeys = Arrays.asList(11, 13, 16, 44, 64);
-
-		// the actual ordering of keys in the heap
-		List<Integer> actualKeys = new ArrayList<Integer>();
-		while (!heap.isEmpty()) {
-			actualKeys.add(heap.removeMin().getKey());
-		}
-
-		// check that the actual ordering matches the expected ordering by using
-		// one assert. Note that assertThat(actual, is(expected)), when used on
-		// lists/arrays, also checks that the ordering is the same.
-		assertThat(actualKeys, is(expectedKeys));
-	}
-
-	/**
-	 * This is an example of testing heap ordering by ensuring that the min key
-	 * is always at the root by checking it explicitly each time, using multiple
-	 * asserts rather than a list.
-	 */
-	@Test
-	public void testRemoveMinHeapOrder() {
-		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		heap.insert(11, "A");
-		heap.insert(13, "B");
-		heap.insert(64, "C");
-		heap.insert(16, "D");
-		heap.insert(44, "E");
-
-		// test the heap ordering by asserting on all elements
-		assertThat(heap.removeMin().getKey(), is(11));
-		assertThat(heap.removeMin().getKey(), is(13));
-		assertThat(heap.removeMin().getKey(), is(16));
-		assertThat(heap.removeMin().getKey(), is(44));
-		assertThat(heap.removeMin().getKey(), is(64));
+	@Override
+	protected AdaptablePriorityQueue<Integer, String> newHeap() {
+		return new MyHeap<Integer, String>(new IntegerComparator());
 	}
 
 	/**
@@ -124,29 +82,6 @@ public class MyHeapTest {
 	 * your helper methods (if applicable).
 	 */
 
-	@Test()
-	public void testInsert() {
-		MyHeap heap = new MyHeap(new IntegerComparator());
-
-		Entry<Integer, String> entry1 = heap.insert(11, "A");
-		Entry<Integer, String> entry2 = heap.insert(13, "B");
-		Entry<Integer, String> entry3 = heap.insert(64, "C");
-		Entry<Integer, String> entry4 = heap.insert(16, "D");
-		Entry<Integer, String> entry5 = heap.insert(44, "E");
-
-		assertEquals((int) entry1.getKey(), 11);
-		assertEquals((int) entry2.getKey(), 13);
-		assertEquals((int) entry3.getKey(), 64);
-		assertEquals((int) entry4.getKey(), 16);
-		assertEquals((int) entry5.getKey(), 44);
-
-		assertEquals(entry1.getValue(), "A");
-		assertEquals(entry2.getValue(), "B");
-		assertEquals(entry3.getValue(), "C");
-		assertEquals(entry4.getValue(), "D");
-		assertEquals(entry5.getValue(), "E");
-	}
-
 	/*
 	 * Here, we're checking to see if an IllegalArgumentException is being
 	 * correctly thrown after we try to call setComparator while passing in
@@ -158,24 +93,19 @@ public class MyHeapTest {
 		heap.setComparator(null);
 	}
 
+	/*
+	 * The comparator set on an empty heap is the one the heap orders by.
+	 */
 	@Test()
-	public void testsize() {
-		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		assertEquals(0, heap.size());
-		Entry<Integer, String> entry = heap.insert(1, "A");
-		assertEquals(1, heap.size());
-		heap.remove(entry);
-		assertEquals(0, heap.size());
-	}
-
-	@Test()
-	public void testisEmpty() {
+	public void testSetComparatorIsUsed() {
 		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		assert (heap.isEmpty());
-		Entry<Integer, String> entry = heap.insert(1, "A");
-		assertFalse(heap.isEmpty());
-		heap.remove(entry);
-		assert (heap.isEmpty());
+		heap.setComparator(new IntegerComparator().reversed());
+		heap.insert(11, "A");
+		heap.insert(64, "B");
+		heap.insert(13, "C");
+		assertEquals(64, (int) heap.removeMin().getKey());
+		assertEquals(13, (int) heap.removeMin().getKey());
+		assertEquals(11, (int) heap.removeMin().getKey());
 	}
 
 	@Test()
@@ -198,38 +128,718 @@ public class MyHeapTest {
 
 	}
 
+	/*
+	 * Loads a heap in one batch and checks that the keys come out in order and
+	 * that the returned handles line up with the pairs passed in.
+	 */
 	@Test()
-	public void testReplaceValue() {
-		MyHeap heap = new MyHeap(new IntegerComparator());
+	public void testInsertAll() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.insert(30, "X");
+
+		List<Entry<Integer, String>> pairs = new ArrayList<Entry<Integer, String>>();
+		for (int key = 99; key > 40; key -= 3) {
+			pairs.add(new MyHeapEntry<Integer, String>(key, "v" + key));
+		}
+		List<Entry<Integer, String>> handles = heap.insertAll(pairs);
+
+		assertEquals(pairs.size(), handles.size());
+		assertEquals(pairs.size() + 1, heap.size());
+		for (int i = 0; i < pairs.size(); i++) {
+			assertEquals(pairs.get(i).getKey(), handles.get(i).getKey());
+			assertEquals(pairs.get(i).getValue(), handles.get(i).getValue());
+		}
+
+		// a handle from the batch can be used like one from insert()
+		heap.replaceKey(handles.get(0), 1);
+		assertEquals(handles.get(0), heap.removeMin());
 
-		Entry<Integer, String> entry1 = heap.insert(11, "A");
-		Entry<Integer, String> entry2 = heap.insert(13, "B");
-		Entry<Integer, String> entry3 = heap.insert(64, "C");
-		Entry<Integer, String> entry4 = heap.insert(16, "D");
-		Entry<Integer, String> entry5 = heap.insert(44, "E");
+		// a batch this small is sorted up entry by entry instead
+		List<Entry<Integer, String>> small = heap.insertAll(Arrays.<Entry<Integer, String>>asList(
+				new MyHeapEntry<Integer, String>(2, "Y"), new MyHeapEntry<Integer, String>(35, "Z")));
+		assertEquals(small.get(0), heap.min());
 
-		heap.replaceValue(entry1, "Z");
-		assertEquals(entry1.getValue(), "Z");
-		heap.replaceValue(entry1, "Y");
-		assertEquals(entry1.getValue(), "Y");
+		int previous = 0;
+		while (!heap.isEmpty()) {
+			int key = heap.removeMin().getKey();
+			assertTrue(previous <= key);
+			previous = key;
+		}
 	}
 
 	@Test()
-	public void testReplaceKey() {
-		MyHeap heap = new MyHeap(new IntegerComparator());
+	public void testConstructFromCollection() {
+		List<Entry<Integer, String>> pairs = Arrays.<Entry<Integer, String>>asList(
+				new MyHeapEntry<Integer, String>(64, "C"), new MyHeapEntry<Integer, String>(11, "A"),
+				new MyHeapEntry<Integer, String>(44, "E"), new MyHeapEntry<Integer, String>(13, "B"));
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), pairs);
+
+		assertThat(heap.removeMin().getValue(), is("A"));
+		assertThat(heap.removeMin().getValue(), is("B"));
+		assertThat(heap.removeMin().getValue(), is("E"));
+		assertThat(heap.removeMin().getValue(), is("C"));
+	}
 
-		Entry<Integer, String> entry1 = heap.insert(11, "A");
-		Entry<Integer, String> entry2 = heap.insert(13, "B");
-		Entry<Integer, String> entry3 = heap.insert(64, "C");
-		Entry<Integer, String> entry4 = heap.insert(16, "D");
-		Entry<Integer, String> entry5 = heap.insert(44, "E");
+	@Test()
+	public void testInsertAllRejectsWholeBatchOnInvalidKey() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		List<Entry<Integer, String>> pairs = Arrays.<Entry<Integer, String>>asList(
+				new MyHeapEntry<Integer, String>(5, "A"), new MyHeapEntry<Integer, String>(500, "B"));
+		try {
+			heap.insertAll(pairs);
+			fail("expected InvalidKeyException");
+		} catch (InvalidKeyException e) {
+		}
+		assertTrue(heap.isEmpty());
+	}
+
+	/*
+	 * With buffering on, inserts are staged until the heap needs ordering,
+	 * and staged entries are valid handles.
+	 */
+	@Test()
+	public void testInsertBuffer() {
+		for (MyHeap.FlushPolicy policy : MyHeap.FlushPolicy.values()) {
+			MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+			heap.setInsertBuffer(8, policy);
+
+			Entry<Integer, String> entry1 = heap.insert(40, "A");
+			Entry<Integer, String> entry2 = heap.insert(30, "B");
+			Entry<Integer, String> entry3 = heap.insert(20, "C");
+			Entry<Integer, String> entry4 = heap.insert(50, "D");
+
+			// nothing has reached the tree yet, but the heap counts the entries
+			assertEquals(0, heap.getTree().size());
+			assertEquals(4, heap.size());
+
+			heap.replaceKey(entry1, 10);
+			heap.replaceValue(entry4, "E");
+			assertEquals(entry2, heap.remove(entry2));
+			assertEquals(3, heap.size());
+
+			assertEquals(entry1, heap.min());
+			assertEquals(3, heap.getTree().size());
+			assertEquals(entry1, heap.removeMin());
+			assertEquals(entry3, heap.removeMin());
+			assertEquals("E", heap.removeMin().getValue());
+			assertTrue(heap.isEmpty());
+		}
+	}
+
+	@Test()
+	public void testInsertBufferFlushesWhenFull() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.setInsertBuffer(3, MyHeap.FlushPolicy.ADAPTIVE);
+		heap.insert(7, "A");
+		heap.insert(5, "B");
+		assertEquals(0, heap.getTree().size());
+		heap.insert(6, "C");
+		assertEquals(3, heap.getTree().size());
+
+		// turning buffering off merges what is left
+		heap.insert(1, "D");
+		heap.setInsertBuffer(0, MyHeap.FlushPolicy.ADAPTIVE);
+		assertEquals(4, heap.getTree().size());
+		assertEquals(1, (int) heap.min().getKey());
+	}
+
+	/*
+	 * Removing an entry already in the tree does not merge the buffer, and
+	 * buffering can be turned off without naming a policy.
+	 */
+	@Test()
+	public void testRemoveFromTreeLeavesBufferAlone() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		Entry<Integer, String> inTree = heap.insert(7, "A");
+		heap.insert(8, "B");
+		heap.setInsertBuffer(4, MyHeap.FlushPolicy.SIFT);
+		heap.insert(5, "C");
+		heap.insert(6, "D");
+
+		heap.remove(inTree);
+		assertEquals(1, heap.getTree().size());
+		assertEquals(3, heap.size());
+
+		heap.setInsertBuffer(0, null);
+		assertEquals(3, heap.getTree().size());
+		assertEquals(5, (int) heap.removeMin().getKey());
+	}
+
+	/*
+	 * Removes batches of very different sizes, checking that every batch
+	 * comes out in order and the heap stays usable.
+	 */
+	@Test()
+	public void testRemoveMinBatch() {
+		MyHeap<Integer, Integer> heap = new MyHeap<Integer, Integer>(new IntegerComparator());
+		List<Entry<Integer, Integer>> live = new ArrayList<Entry<Integer, Integer>>();
+		for (int i = 0; i < 200; i++) {
+			live.add(heap.insert(1 + (i * 37) % 99, i));
+		}
+
+		int[] batches = { 2, 150, 0, 10, 100 };
+		for (int k : batches) {
+			List<Integer> expected = new ArrayList<Integer>();
+			for (Entry<Integer, Integer> entry : live) {
+				expected.add(entry.getKey());
+			}
+			Collections.sort(expected);
+			expected = expected.subList(0, Math.min(k, expected.size()));
+
+			List<Entry<Integer, Integer>> removed = heap.removeMin(k);
+			List<Integer> actual = new ArrayList<Integer>();
+			for (Entry<Integer, Integer> entry : removed) {
+				actual.add(entry.getKey());
+				assertTrue(live.remove(entry));
+			}
+			assertThat(actual, is(expected));
+			assertEquals(live.size(), heap.size());
+		}
+
+		// the last batch asked for more than was left
+		assertTrue(heap.isEmpty());
+	}
+
+	/*
+	 * After batches of random sizes from both kinds of tree, every parent
+	 * still has a key no larger than its children's, and the handles of the
+	 * entries that stayed still work.
+	 */
+	@Test()
+	public void testRemoveMinBatchKeepsHeapOrder() {
+		Random random = new Random(8);
+		for (int round = 0; round < 40; round++) {
+			MyHeap<Integer, Integer> heap = round % 2 == 0
+					? new MyHeap<Integer, Integer>(new IntegerComparator())
+					: new MyHeap<Integer, Integer>(new IntegerComparator(),
+							new MyArrayHeapTree<MyHeapEntry<Integer, Integer>>());
+			List<Entry<Integer, Integer>> live = new ArrayList<Entry<Integer, Integer>>();
+			for (int i = 1 + random.nextInt(300); i > 0; i--) {
+				live.add(heap.insert(1 + random.nextInt(99), i));
+			}
+			while (!heap.isEmpty()) {
+				List<Entry<Integer, Integer>> removed = heap.removeMin(1 + random.nextInt(heap.size()));
+				for (int i = 0; i < removed.size(); i++) {
+					assertTrue(live.remove(removed.get(i)));
+					if (i > 0) {
+						assertTrue(removed.get(i - 1).getKey() <= removed.get(i).getKey());
+					}
+				}
+				for (Entry<Integer, Integer> entry : live) {
+					assertTrue(removed.get(removed.size() - 1).getKey() <= entry.getKey());
+				}
+				assertHeapOrder(heap);
+				if (!live.isEmpty()) {
+					Entry<Integer, Integer> entry = live.get(random.nextInt(live.size()));
+					heap.replaceKey(entry, 1 + random.nextInt(99));
+					assertHeapOrder(heap);
+				}
+				assertEquals(live.size(), heap.size());
+			}
+		}
+	}
+
+	private static void assertHeapOrder(MyHeap<Integer, Integer> heap) {
+		CompleteBinaryTree<MyHeapEntry<Integer, Integer>> tree = heap.getTree();
+		for (MyHeapEntry<Integer, Integer> entry : tree) {
+			Position<MyHeapEntry<Integer, Integer>> position = entry.get_position();
+			assertTrue(position.element() == entry);
+			if (!tree.isRoot(position)) {
+				assertTrue(tree.parent(position).element().getKey() <= entry.getKey());
+			}
+		}
+	}
+
+	@Test()
+	public void testDrainTo() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		Entry<Integer, String> entry = heap.insert(64, "C");
+		heap.insert(11, "A");
+		heap.insert(44, "B");
+
+		List<Entry<Integer, String>> drained = new ArrayList<Entry<Integer, String>>();
+		assertEquals(2, heap.drainTo(drained, 2));
+		assertThat(drained.get(0).getValue(), is("A"));
+		assertThat(drained.get(1).getValue(), is("B"));
+		assertEquals(entry, heap.min());
+	}
+
+	/*
+	 * Merging moves the other heap's entries, buffered ones included, and the
+	 * handles of both heaps keep working on the merged heap.
+	 */
+	@Test()
+	public void testMerge() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		MyHeap<Integer, String> other = new MyHeap<Integer, String>(new IntegerComparator());
+		Entry<Integer, String> entry1 = heap.insert(30, "A");
+		heap.insert(50, "B");
+		Entry<Integer, String> entry2 = other.insert(20, "C");
+		other.insert(40, "D");
+		other.setInsertBuffer(4, MyHeap.FlushPolicy.SIFT);
+		Entry<Integer, String> buffered = other.insert(60, "E");
+
+		heap.merge(other);
+		assertEquals(5, heap.size());
+		assertTrue(other.isEmpty());
 
 		heap.replaceKey(entry1, 10);
-		assertEquals(10, (int) entry1.getKey());
-		heap.replaceKey(entry1, 14);
-		assertEquals(13, (int) entry1.getKey());
+		heap.remove(buffered);
+		assertEquals(entry1, heap.removeMin());
+		assertEquals(entry2, heap.removeMin());
+		assertEquals(40, (int) heap.removeMin().getKey());
+		assertEquals(50, (int) heap.removeMin().getKey());
+		assertTrue(heap.isEmpty());
+
+		// the other heap is still usable, but no longer holds the entries
+		other.insert(5, "F");
+		assertEquals(1, other.size());
+		try {
+			other.remove(entry2);
+			fail();
+		} catch (InvalidEntryException e) {
+			// expected
+		}
+	}
+
+	/*
+	 * An entry of another heap is rejected by remove(), replaceKey(),
+	 * replaceValue() and release(), and neither heap nor the value index is
+	 * changed by the attempt.
+	 */
+	@Test()
+	public void testEntryOfAnotherHeapIsRejected() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		MyHeap<Integer, String> other = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.setValueIndex(true);
+		heap.setRecycling(4);
+		for (int i = 1; i <= 7; i++) {
+			heap.insert(i, "v" + i);
+		}
+		Entry<Integer, String> foreign = other.insert(7, "v1");
+
+		try {
+			heap.remove(foreign);
+			fail();
+		} catch (InvalidEntryException e) {
+			// expected
+		}
+		try {
+			heap.replaceKey(foreign, 1);
+			fail();
+		} catch (InvalidEntryException e) {
+			// expected
+		}
+		try {
+			heap.replaceValue(foreign, "x");
+			fail();
+		} catch (InvalidEntryException e) {
+			// expected
+		}
+		try {
+			heap.release(foreign);
+			fail();
+		} catch (InvalidEntryException e) {
+			// expected
+		}
+
+		assertTrue(heap.containsValue("v1"));
+		for (int i = 1; i <= 7; i++) {
+			assertEquals("v" + i, heap.removeMin().getValue());
+		}
+		assertEquals(foreign, other.removeMin());
+		assertEquals("v1", foreign.getValue());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergeWithItselfThrowsIllegalArgumentException() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.merge(heap);
+	}
 
+	/*
+	 * With the value index on, entries can be found, re-keyed and removed by
+	 * value through every insert and remove path.
+	 */
+	@Test()
+	public void testValueIndex() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.insert(30, "A");
+		heap.setValueIndex(true);
+		heap.insert(20, "B");
+		heap.insertAll(Arrays.asList(new MyHeapEntry<Integer, String>(40, "C"),
+				new MyHeapEntry<Integer, String>(50, "D")));
+
+		assertTrue(heap.containsValue("A"));
+		assertTrue(heap.containsValue("D"));
+		assertEquals(30, (int) heap.replaceKeyForValue("A", 10));
+		assertEquals("A", heap.min().getValue());
+		assertEquals(40, (int) heap.removeValue("C").getKey());
+		assertFalse(heap.containsValue("C"));
+
+		assertEquals("A", heap.removeMin().getValue());
+		assertFalse(heap.containsValue("A"));
+		heap.replaceValue(heap.getEntry("D"), "E");
+		assertFalse(heap.containsValue("D"));
+		assertEquals(50, (int) heap.getEntry("E").getKey());
+
+		assertEquals(2, heap.removeMin(2).size());
+		assertFalse(heap.containsValue("B"));
+		assertFalse(heap.containsValue("E"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testValueIndexRejectsDuplicateValue() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.setValueIndex(true);
+		heap.insert(30, "A");
+		heap.insert(20, "A");
+	}
+
+	@Test(expected = InvalidEntryException.class)
+	public void testRemoveValueThrowsInvalidEntryException() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.setValueIndex(true);
+		heap.insert(30, "A");
+		heap.removeValue("B");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testContainsValueThrowsIllegalStateExceptionWhenOff() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.containsValue("A");
+	}
+
+	/*
+	 * The sorted iterator returns the entries in key order and leaves the
+	 * heap, insert buffer included, as it was.
+	 */
+	@Test()
+	public void testSortedIterator() {
+		MyHeap<Integer, Integer> heap = new MyHeap<Integer, Integer>(new IntegerComparator());
+		Random random = new Random(21);
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int i = 0; i < 200; i++) {
+			int key = 1 + random.nextInt(99);
+			keys.add(key);
+			heap.insert(key, i);
+		}
+		heap.setInsertBuffer(8, MyHeap.FlushPolicy.SIFT);
+		Entry<Integer, Integer> buffered = heap.insert(1, -1);
+		keys.add(1);
+		Collections.sort(keys);
+
+		List<Integer> iterated = new ArrayList<Integer>();
+		Iterator<Entry<Integer, Integer>> iterator = heap.sortedIterator();
+		while (iterator.hasNext()) {
+			iterated.add(iterator.next().getKey());
+		}
+		assertThat(iterated, is(keys));
+		assertEquals(201, heap.size());
+		assertEquals(buffered, heap.remove(buffered));
+	}
 
+	/*
+	 * Splitting the Spliterator as far as it goes visits every entry exactly
+	 * once, and a parallel stream sees the whole heap.
+	 */
+	@Test()
+	public void testSpliteratorSplitsBySubtree() {
+		MyHeap<Integer, Integer> heap = new MyHeap<Integer, Integer>(new IntegerComparator());
+		int total = 0;
+		for (int i = 0; i < 1000; i++) {
+			heap.insert(1 + i % 99, i);
+			total += i;
+		}
+		List<Spliterator<Entry<Integer, Integer>>> pending = new ArrayList<Spliterator<Entry<Integer, Integer>>>();
+		pending.add(heap.spliterator());
+		final Set<Integer> seen = new HashSet<Integer>();
+		int splits = 0;
+		while (!pending.isEmpty()) {
+			Spliterator<Entry<Integer, Integer>> spliterator = pending.remove(pending.size() - 1);
+			Spliterator<Entry<Integer, Integer>> split = spliterator.trySplit();
+			if (split != null) {
+				splits++;
+				pending.add(spliterator);
+				pending.add(split);
+			} else {
+				spliterator.forEachRemaining(entry -> assertTrue(seen.add(entry.getValue())));
+			}
+		}
+		assertEquals(1000, seen.size());
+		assertTrue(splits > 100);
+
+		assertEquals(total, heap.parallelStream().mapToInt(Entry::getValue).sum());
+		assertEquals(1000, heap.stream().count());
+	}
+
+	/*
+	 * A restored heap has the same tree layout as the one saved, and works
+	 * like any other heap afterwards.
+	 */
+	@Test()
+	public void testSnapshotAndRestore() throws IOException {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(),
+				new MyArrayHeapTree<MyHeapEntry<Integer, String>>());
+		for (int key = 99; key > 0; key -= 7) {
+			heap.insert(key, "v" + key);
+		}
+
+		Path file = Files.createTempFile("heap", ".snapshot");
+		try {
+			heap.snapshot(file, HeapSerializer.integers(), HeapSerializer.strings());
+			MyHeap<Integer, String> restored = MyHeap.restore(file, new IntegerComparator(),
+					HeapSerializer.integers(), HeapSerializer.strings(),
+					new MyArrayHeapTree<MyHeapEntry<Integer, String>>());
+
+			// both trees list their entries in level order
+			assertThat(levelOrderKeys(restored), is(levelOrderKeys(heap)));
+
+			Entry<Integer, String> entry = restored.insert(50, "new");
+			heap.insert(50, "new");
+			while (!heap.isEmpty()) {
+				Entry<Integer, String> expected = heap.removeMin();
+				Entry<Integer, String> actual = restored.removeMin();
+				assertEquals(expected.getKey(), actual.getKey());
+				assertEquals(expected.getValue(), actual.getValue());
+			}
+			assertTrue(restored.isEmpty());
+			assertEquals("new", entry.getValue());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static List<Integer> levelOrderKeys(MyHeap<Integer, String> heap) {
+		List<Integer> keys = new ArrayList<Integer>();
+		for (MyHeapEntry<Integer, String> entry : heap.getTree()) {
+			keys.add(entry.getKey());
+		}
+		return keys;
+	}
+
+	@Test(expected = IOException.class)
+	public void testRestoreRejectsOtherFiles() throws IOException {
+		Path file = Files.createTempFile("heap", ".snapshot");
+		try {
+			Files.write(file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 });
+			MyHeap.restore(file, new IntegerComparator(), HeapSerializer.integers(), HeapSerializer.strings());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/*
+	 * A snapshot cut short anywhere after its header is reported as an
+	 * IOException, not as a failure of the buffer it is read from.
+	 */
+	@Test
+	public void testRestoreRejectsTruncatedFile() throws IOException {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		for (int key = 1; key < 10; key++) {
+			heap.insert(key, "v" + key);
+		}
+		Path file = Files.createTempFile("heap", ".snapshot");
+		try {
+			heap.snapshot(file, HeapSerializer.integers(), HeapSerializer.strings());
+			byte[] bytes = Files.readAllBytes(file);
+			for (int length = 12; length < bytes.length; length++) {
+				Files.write(file, Arrays.copyOf(bytes, length));
+				try {
+					MyHeap.restore(file, new IntegerComparator(), HeapSerializer.integers(),
+							HeapSerializer.strings());
+					fail();
+				} catch (IOException e) {
+					// expected
+				}
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/*
+	 * Strings that share long prefixes still come out in order, since ties of
+	 * the normalized prefixes fall back to the comparator.
+	 */
+	@Test
+	public void testKeyNormalizerKeepsOrder() {
+		MyHeap<String, Integer> heap = new MyHeap<String, Integer>(String::compareTo);
+		heap.setKeyNormalizer(KeyNormalizer.strings());
+		Random random = new Random(24);
+		List<String> keys = new ArrayList<String>();
+		List<Entry<String, Integer>> entries = new ArrayList<Entry<String, Integer>>();
+		for (int i = 0; i < 500; i++) {
+			String key = (i % 2 == 0 ? "item-" : "it") + random.nextInt(1000);
+			keys.add(key);
+			entries.add(heap.insert(key, i));
+		}
+		// new keys for some entries, both smaller and larger
+		for (int i = 0; i < 500; i += 7) {
+			String key = random.nextBoolean() ? "a" + i : "z" + i;
+			keys.set(i, key);
+			heap.replaceKey(entries.get(i), key);
+		}
+		Collections.sort(keys);
+		for (String key : keys) {
+			assertEquals(key, heap.removeMin().getKey());
+		}
+	}
+
+	/*
+	 * Keys that differ within their prefixes are sorted without calling the
+	 * comparator at all.
+	 */
+	@Test
+	public void testKeyNormalizerSkipsComparator() {
+		MyHeap<String, Integer> heap = new MyHeap<String, Integer>(String::compareTo);
+		heap.setKeyNormalizer(KeyNormalizer.strings());
+		HeapMetrics metrics = heap.enableMetrics();
+		for (int i = 0; i < 100; i++) {
+			heap.insert(String.format("%04d", (i * 37) % 100), i);
+		}
+		for (int i = 0; i < 100; i++) {
+			assertEquals(String.format("%04d", i), heap.removeMin().getKey());
+		}
+		assertEquals(0, metrics.getComparisons());
+
+		MyHeap<Integer, String> exact = new MyHeap<Integer, String>(new IntegerComparator());
+		exact.setKeyNormalizer(KeyNormalizer.integers());
+		metrics = exact.enableMetrics();
+		for (int i = 0; i < 20; i++) {
+			exact.insert(1 + i % 5, "");
+		}
+		while (!exact.isEmpty()) {
+			exact.removeMin();
+		}
+		assertEquals(0, metrics.getComparisons());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSetKeyNormalizerOnNonEmptyHeap() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.insert(5, "A");
+		heap.setKeyNormalizer(KeyNormalizer.integers());
+	}
+
+	/*
+	 * Released entries come back from insert() with a new generation, and a
+	 * stale handle used with its old generation is rejected.
+	 */
+	@Test
+	public void testRecyclingReusesEntries() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.setRecycling(4);
+		Entry<Integer, String> first = heap.insert(10, "A");
+		int generation = ((MyHeapEntry<Integer, String>) first).get_generation();
+		heap.insert(20, "B");
+		assertTrue(heap.removeMin() == first);
+		heap.release(first);
+		assertEquals(null, first.getValue());
+
+		Entry<Integer, String> reused = heap.insert(30, "C");
+		assertTrue(reused == first);
+		assertEquals("C", reused.getValue());
+		try {
+			heap.remove(first, generation);
+			fail("stale handle should be rejected");
+		} catch (InvalidEntryException e) {
+		}
+		int current = ((MyHeapEntry<Integer, String>) reused).get_generation();
+		assertEquals(Integer.valueOf(30), heap.replaceKey(reused, 5, current));
+		assertEquals("C", heap.removeMin().getValue());
+		assertEquals("B", heap.remove(heap.min(), 0).getValue());
+		assertTrue(heap.isEmpty());
+	}
+
+	/*
+	 * Insert and remove cycles on a warm recycling heap keep the heap correct
+	 * while reusing the same entries.
+	 */
+	@Test
+	public void testRecyclingSteadyState() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.setRecycling(64);
+		Random random = new Random(25);
+		Set<Entry<Integer, String>> seen = new HashSet<Entry<Integer, String>>();
+		for (int i = 0; i < 32; i++) {
+			seen.add(heap.insert(1 + random.nextInt(99), "v"));
+		}
+		for (int i = 0; i < 1000; i++) {
+			Entry<Integer, String> min = heap.removeMin();
+			for (Entry<Integer, String> entry : heap.getTree()) {
+				assertTrue(min.getKey() <= entry.getKey());
+			}
+			heap.release(min);
+			assertTrue(seen.contains(heap.insert(1 + random.nextInt(99), "v")));
+		}
+		assertEquals(32, heap.size());
+	}
+
+	/*
+	 * A stale handle to an entry that was released and reused is rejected by
+	 * remove(), replaceKey() and replaceValue(), so it cannot change the new
+	 * item. The new item is reached through its generation, or by value.
+	 */
+	@Test
+	public void testStaleHandleCannotChangeReusedEntry() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.setRecycling(4);
+		heap.setValueIndex(true);
+		Entry<Integer, String> stale = heap.insert(10, "A");
+		heap.insert(20, "B");
+		heap.release(heap.removeMin());
+		Entry<Integer, String> reused = heap.insert(30, "C");
+		assertTrue(reused == stale);
+
+		try {
+			heap.remove(stale);
+			fail();
+		} catch (InvalidEntryException e) {
+			// expected
+		}
+		try {
+			heap.replaceKey(stale, 5);
+			fail();
+		} catch (InvalidEntryException e) {
+			// expected
+		}
+		try {
+			heap.replaceValue(stale, "X");
+			fail();
+		} catch (InvalidEntryException e) {
+			// expected
+		}
+		assertEquals(2, heap.size());
+		assertEquals("B", heap.min().getValue());
+
+		int generation = ((MyHeapEntry<Integer, String>) reused).get_generation();
+		assertEquals("C", heap.replaceValue(reused, "D", generation));
+		assertEquals(30, (int) heap.replaceKeyForValue("D", 15));
+		assertTrue(heap.remove(reused, generation) == reused);
+		assertEquals("B", heap.removeMin().getValue());
+	}
+
+	@Test(expected = InvalidEntryException.class)
+	public void testReleaseEntryStillInHeap() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.setRecycling(4);
+		heap.release(heap.insert(10, "A"));
+	}
+
+	@Test(expected = InvalidEntryException.class)
+	public void testReleaseTwice() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.setRecycling(4);
+		Entry<Integer, String> entry = heap.remove(heap.insert(10, "A"));
+		heap.release(entry);
+		heap.release(entry);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testReleaseWithoutRecycling() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.release(heap.remove(heap.insert(10, "A")));
 	}
 
 }
@@ -2,6 +2,7 @@ package heap;
 
 import java.util.ArrayDeque;
 
+import net.datastructures.BTPosition;
 import net.datastructures.CompleteBinaryTree;
 import net.datastructures.EmptyTreeException;
 import net.datastructures.LinkedBinaryTree;
@@ -29,6 +30,9 @@ public class MyLinkedHeapTree<E> extends LinkedBinaryTree<E> implements Complete
 
 	
 	private ArrayDeque<Position<E>> _positions;
+	// nodes removed from the tree kept for reuse by add(), null if pooling is off
+	private ArrayDeque<BTPosition<E>> _pool;
+	private int _poolCapacity;
 
 	/**
 	 * Default constructor. The tree begins empty.
@@ -105,11 +109,14 @@ public class MyLinkedHeapTree<E> extends LinkedBinaryTree<E> implements Complete
 		}
 		// get the last node of the tree 
 		Position<E> child = _positions.peekLast();
+		E element = child.element();
 		
 		// check the edge case in that the tree only has one node
 		if (isRoot(child)) {
 			_positions.removeLast();
-			return remove(child);
+			remove(child);
+			recycle(child);
+			return element;
 
 		}
 		Position<E> parent = parent(child);
@@ -127,12 +134,81 @@ public class MyLinkedHeapTree<E> extends LinkedBinaryTree<E> implements Complete
 			_positions.addFirst(parent(child));
 			remove(child);
 		}
-		return child.element();
+		recycle(child);
+		return element;
 	}
 
 	/*
 	 * Feel free to add helper methods here. Add helper methods here.
 	 */
+
+	/**
+	 * Turns node pooling on or off. While it is on, up to the given number of
+	 * nodes removed by remove() are kept and handed out again by add(), so a
+	 * tree that grows and shrinks by about the same amount stops allocating.
+	 * A pooled node is cleared before it is kept, and a position that was
+	 * removed must not be used again, since it may now hold another element.
+	 * 
+	 * @param capacity
+	 *            the most nodes kept for reuse, 0 to turn pooling off
+	 * @throws IllegalArgumentException
+	 *             if capacity is negative
+	 */
+	public void setNodePool(int capacity) throws IllegalArgumentException {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("negative pool capacity");
+		}
+		_poolCapacity = capacity;
+		if (capacity == 0) {
+			_pool = null;
+		} else if (_pool == null) {
+			_pool = new ArrayDeque<BTPosition<E>>(capacity);
+		} else {
+			while (_pool.size() > capacity) {
+				_pool.removeLast();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of removed nodes waiting to be reused
+	 */
+	public int pooledNodes() {
+		return _pool == null ? 0 : _pool.size();
+	}
+
+	/**
+	 * Creates the nodes of the tree for addRoot(), insertLeft() and
+	 * insertRight(), reusing a pooled node if there is one.
+	 */
+	@Override
+	protected BTPosition<E> createNode(E element, BTPosition<E> parent, BTPosition<E> left, BTPosition<E> right) {
+		BTPosition<E> node = _pool == null ? null : _pool.pollLast();
+		if (node == null) {
+			return super.createNode(element, parent, left, right);
+		}
+		node.setElement(element);
+		node.setParent(parent);
+		node.setLeft(left);
+		node.setRight(right);
+		return node;
+	}
+
+	/*
+	 * keeps a node that was just removed from the tree for reuse if pooling is
+	 * on and the pool has room
+	 */
+	private void recycle(Position<E> position) {
+		if (_pool == null || _pool.size() >= _poolCapacity) {
+			return;
+		}
+		BTPosition<E> node = (BTPosition<E>) position;
+		node.setElement(null);
+		node.setParent(null);
+		node.setLeft(null);
+		node.setRight(null);
+		_pool.add(node);
+	}
 	
 	/*
 	 *  getter of the last position of the tree, for use in MyHeap class
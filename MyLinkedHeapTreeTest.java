@@ -132,4 +132,38 @@ public class MyLinkedHeapTreeTest {
 		assertEquals(24, tree.remove());
 	}
 
+	/*
+	 * Removed nodes go to the pool and are handed out again by add(), still
+	 * forming a correct complete tree.
+	 */
+	@Test
+	public void testNodePoolReusesNodes() {
+		MyLinkedHeapTree<Integer> tree = new MyLinkedHeapTree<Integer>();
+		tree.setNodePool(2);
+		Position<Integer> root = tree.add(1);
+		tree.add(2);
+		Position<Integer> right = tree.add(3);
+		Position<Integer> last = tree.add(4);
+		assertThat(tree.remove(), is(4));
+		assertThat(tree.remove(), is(3));
+		assertThat(tree.remove(), is(2));
+		// the pool only keeps two nodes
+		assertThat(tree.pooledNodes(), is(2));
+
+		// the node removed last is reused first
+		Position<Integer> reused = tree.add(5);
+		assertThat(tree.pooledNodes(), is(1));
+		assertTrue(reused == right);
+		assertTrue(tree.left(root) == reused);
+		assertThat(reused.element(), is(5));
+		assertTrue(tree.add(6) == last);
+		assertThat(tree.right(root).element(), is(6));
+		assertThat(tree.size(), is(3));
+		assertThat(tree.pooledNodes(), is(0));
+		tree.add(7);
+		assertThat(tree.left(reused).element(), is(7));
+		assertThat(tree.remove(), is(7));
+		assertThat(tree.remove(), is(6));
+	}
+
 }
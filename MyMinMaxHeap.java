@@ -0,0 +1,426 @@
+package heap;
+
+import java.util.Comparator;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.CompleteBinaryTree;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+import net.datastructures.Position;
+
+/**
+ * An implementation of a double-ended adaptable priority queue by means of a
+ * min-max heap stored in a complete binary tree. The levels of the tree
+ * alternate: an entry on an even level (the root is level 0) has a key no
+ * larger than any key below it, and an entry on an odd level has a key no
+ * smaller than any key below it. The minimum is therefore the root and the
+ * maximum is one of the root's children, so one heap answers both min() and
+ * max() in O(1) time, where two opposite MyHeaps would need every entry twice.
+ *
+ * Sorting an entry up compares it with its parent once, to learn whether it
+ * belongs with the small or the large keys, and from then on only with its
+ * grandparents. Sorting down picks the extreme of up to six children and
+ * grandchildren. Both walk the tree with the entry as a hole, like MyHeap, so
+ * the entries passed over are written once per level and handles stay valid.
+ *
+ * Keys follow the same rules as MyHeap. insert(), removeMin(), removeMax(),
+ * remove() and replaceKey() run in O(log n) time, the rest in O(1) time.
+ */
+
+public class MyMinMaxHeap<K, V> implements AdaptablePriorityQueue<K, V> {
+
+	private final CompleteBinaryTree<MyHeapEntry<K, V>> _tree;
+	private Comparator<K> _comparator;
+
+	/**
+	 * Creates an empty heap with the given comparator, stored in a
+	 * MyLinkedHeapTree.
+	 *
+	 * @param comparator
+	 *            the comparator to be used for heap keys
+	 */
+	public MyMinMaxHeap(Comparator<K> comparator) {
+		this(comparator, new MyLinkedHeapTree<MyHeapEntry<K, V>>());
+	}
+
+	/**
+	 * Creates an empty heap with the given comparator that is stored in the
+	 * given complete binary tree.
+	 *
+	 * @param comparator
+	 *            the comparator to be used for heap keys
+	 * @param tree
+	 *            an empty tree to hold the heap entries
+	 * @throws IllegalArgumentException
+	 *             if the tree is null or not empty
+	 */
+	public MyMinMaxHeap(Comparator<K> comparator, CompleteBinaryTree<MyHeapEntry<K, V>> tree)
+			throws IllegalArgumentException {
+		if (tree == null || !tree.isEmpty()) {
+			throw new IllegalArgumentException("tree must be empty");
+		}
+		_tree = tree;
+		_comparator = comparator;
+	}
+
+	/**
+	 * Sets the comparator used for comparing items in the heap to the
+	 * comparator passed in.
+	 *
+	 * @param comparator
+	 *            the comparator to be used for heap keys
+	 * @throws IllegalStateException
+	 *             if priority queue is not empty
+	 * @throws IllegalArgumentException
+	 *             if null comparator is passed in
+	 */
+	public void setComparator(Comparator<K> comparator) throws IllegalStateException, IllegalArgumentException {
+		if (!isEmpty()) {
+			throw new IllegalStateException("priority queue is not empty");
+		}
+		if (comparator == null) {
+			throw new IllegalArgumentException("null comparator");
+		}
+		_comparator = comparator;
+	}
+
+	/**
+	 * @return the underlying binary tree on which the heap is based
+	 */
+	public CompleteBinaryTree<MyHeapEntry<K, V>> getTree() {
+		return _tree;
+	}
+
+	/**
+	 * Returns the size of the heap. This method runs in O(1) time.
+	 */
+	public int size() {
+		return _tree.size();
+	}
+
+	/**
+	 * Returns whether the heap is empty. This method runs in O(1) time.
+	 */
+	public boolean isEmpty() {
+		return _tree.isEmpty();
+	}
+
+	/**
+	 * Returns but does not remove an entry with minimum key. This method runs
+	 * in O(1) time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the heap is empty
+	 */
+	public Entry<K, V> min() throws EmptyPriorityQueueException {
+		if (isEmpty()) {
+			throw new EmptyPriorityQueueException("heap is empty");
+		}
+		return _tree.root().element();
+	}
+
+	/**
+	 * Returns but does not remove an entry with maximum key. This method runs
+	 * in O(1) time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the heap is empty
+	 */
+	public Entry<K, V> max() throws EmptyPriorityQueueException {
+		if (isEmpty()) {
+			throw new EmptyPriorityQueueException("heap is empty");
+		}
+		return maxPosition().element();
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the entry created. This method runs
+	 * in O(log n) time.
+	 *
+	 * @throws InvalidKeyException
+	 *             if the key is not suitable for this heap
+	 */
+	public Entry<K, V> insert(K key, V value) throws InvalidKeyException {
+		MyHeap.checkKey(key);
+		MinMaxEntry<K, V> entry = new MinMaxEntry<K, V>(key, value);
+		entry._owner = this;
+		entry.set_position(_tree.add(entry));
+		upSort(entry.get_position());
+		return entry;
+	}
+
+	/**
+	 * Removes and returns an entry with minimum key. This method runs in
+	 * O(log n) time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the heap is empty
+	 */
+	public Entry<K, V> removeMin() throws EmptyPriorityQueueException {
+		return remove(min());
+	}
+
+	/**
+	 * Removes and returns an entry with maximum key. This method runs in
+	 * O(log n) time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the heap is empty
+	 */
+	public Entry<K, V> removeMax() throws EmptyPriorityQueueException {
+		return remove(max());
+	}
+
+	/**
+	 * Removes and returns the given entry from the heap. This method runs in
+	 * O(log n) time.
+	 *
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this heap
+	 */
+	public Entry<K, V> remove(Entry<K, V> entry) throws InvalidEntryException {
+		MyHeapEntry<K, V> checkedEntry = checkAndConvertEntry(entry);
+		Position<MyHeapEntry<K, V>> hole = checkedEntry.get_position();
+
+		MyHeapEntry<K, V> last = _tree.remove();
+		checkedEntry.set_position(null);
+		((MinMaxEntry<K, V>) checkedEntry)._owner = null;
+
+		// refill the hole left by the removed entry with the last entry
+		if (last != checkedEntry) {
+			moveEntry(last, hole);
+			resort(hole);
+		}
+		return checkedEntry;
+	}
+
+	/**
+	 * Replaces the key of the given entry. This method runs in O(log n) time.
+	 *
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this heap
+	 * @throws InvalidKeyException
+	 *             if the key is not suitable for this heap
+	 */
+	public K replaceKey(Entry<K, V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		MyHeapEntry<K, V> checkedEntry = checkAndConvertEntry(entry);
+		MyHeap.checkKey(key);
+
+		K oldKey = checkedEntry.getKey();
+		checkedEntry.setKey(key);
+		resort(checkedEntry.get_position());
+		return oldKey;
+	}
+
+	/**
+	 * Replaces the value of the given entry. This method runs in O(1) time.
+	 *
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this heap
+	 */
+	public V replaceValue(Entry<K, V> entry, V value) throws InvalidEntryException {
+		MyHeapEntry<K, V> checkedEntry = checkAndConvertEntry(entry);
+		V oldValue = checkedEntry.getValue();
+		checkedEntry.setValue(value);
+		return oldValue;
+	}
+
+	/**
+	 * Determines whether a given entry is currently stored in this heap and
+	 * converts it to a MyHeapEntry.
+	 *
+	 * @throws InvalidEntryException
+	 *             if the entry is not of the proper class, has been removed or
+	 *             belongs to another heap
+	 */
+	@SuppressWarnings("unchecked")
+	private MyHeapEntry<K, V> checkAndConvertEntry(Entry<K, V> entry) throws InvalidEntryException {
+		if (!(entry instanceof MinMaxEntry)) {
+			throw new InvalidEntryException("Invalid entry");
+		}
+		MinMaxEntry<K, V> checkedEntry = (MinMaxEntry<K, V>) entry;
+		if (checkedEntry._owner != this) {
+			throw new InvalidEntryException("entry not in heap");
+		}
+		return checkedEntry;
+	}
+
+	/**
+	 * @return the position of the largest key, which is the larger of the
+	 *         root's children, or the root if it has none
+	 */
+	private Position<MyHeapEntry<K, V>> maxPosition() {
+		Position<MyHeapEntry<K, V>> root = _tree.root();
+		if (!_tree.hasLeft(root)) {
+			return root;
+		}
+		Position<MyHeapEntry<K, V>> max = _tree.left(root);
+		if (_tree.hasRight(root)) {
+			Position<MyHeapEntry<K, V>> right = _tree.right(root);
+			if (_comparator.compare(right.element().getKey(), max.element().getKey()) > 0) {
+				max = right;
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Sorts the entry at the given position into place after its key changed
+	 * or it was moved into a hole. It is first sorted up; whatever entry then
+	 * sits at the position (the same one, or an ancestor that was moved down
+	 * into it) is sorted down.
+	 */
+	private void resort(Position<MyHeapEntry<K, V>> position) {
+		upSort(position);
+		downSort(position);
+	}
+
+	/**
+	 * Walks the entry at the given position up. Its parent tells it whether
+	 * it belongs with the small keys (min levels) or the large ones (max
+	 * levels); if it is on the wrong kind of level the parent moves down into
+	 * its place. From there it only passes grandparents on its own kind of
+	 * level, each of which moves two levels down into the hole.
+	 *
+	 * @return the position the entry comes to rest at
+	 */
+	private Position<MyHeapEntry<K, V>> upSort(Position<MyHeapEntry<K, V>> position) {
+		MyHeapEntry<K, V> entry = position.element();
+		K key = entry.getKey();
+		if (_tree.isRoot(position)) {
+			return position;
+		}
+		boolean minLevel = isMinLevel(position);
+		Position<MyHeapEntry<K, V>> parent = _tree.parent(position);
+		if (before(parent.element().getKey(), key, minLevel)) {
+			// the parent's level is where the entry belongs
+			moveEntry(parent.element(), position);
+			position = parent;
+			minLevel = !minLevel;
+		}
+		while (!_tree.isRoot(position) && !_tree.isRoot(_tree.parent(position))) {
+			Position<MyHeapEntry<K, V>> grandparent = _tree.parent(_tree.parent(position));
+			if (!before(key, grandparent.element().getKey(), minLevel)) {
+				break;
+			}
+			moveEntry(grandparent.element(), position);
+			position = grandparent;
+		}
+		moveEntry(entry, position);
+		return position;
+	}
+
+	/**
+	 * Walks the entry at the given position down. On a min level the hole
+	 * moves to the smallest of the children and grandchildren while that key
+	 * is smaller than the entry's (on a max level, the largest while larger).
+	 * When it drops two levels past a parent on the other kind of level that
+	 * the entry belongs above, the entry takes that parent's place and the
+	 * parent's entry is carried down instead.
+	 */
+	private void downSort(Position<MyHeapEntry<K, V>> position) {
+		boolean minLevel = isMinLevel(position);
+		MyHeapEntry<K, V> entry = position.element();
+		while (_tree.hasLeft(position)) {
+			Position<MyHeapEntry<K, V>> left = _tree.left(position);
+			Position<MyHeapEntry<K, V>> right = _tree.hasRight(position) ? _tree.right(position) : null;
+			Position<MyHeapEntry<K, V>> best = better(left, right, minLevel);
+			best = better(best, betterChild(left, minLevel), minLevel);
+			if (right != null) {
+				best = better(best, betterChild(right, minLevel), minLevel);
+			}
+			boolean grandchild = best != left && best != right;
+			if (!before(best.element().getKey(), entry.getKey(), minLevel)) {
+				break;
+			}
+			moveEntry(best.element(), position);
+			position = best;
+			if (!grandchild) {
+				break;
+			}
+			Position<MyHeapEntry<K, V>> parent = _tree.parent(position);
+			if (before(parent.element().getKey(), entry.getKey(), minLevel)) {
+				// the entry belongs on the parent's level, carry the parent's
+				// entry down instead
+				MyHeapEntry<K, V> carried = parent.element();
+				moveEntry(entry, parent);
+				entry = carried;
+			}
+		}
+		moveEntry(entry, position);
+	}
+
+	/**
+	 * @return whichever of the two positions, either of which may be null,
+	 *         holds the smaller key on a min level or the larger on a max level
+	 */
+	private Position<MyHeapEntry<K, V>> better(Position<MyHeapEntry<K, V>> first,
+			Position<MyHeapEntry<K, V>> second, boolean minLevel) {
+		if (first == null) {
+			return second;
+		}
+		if (second == null || !before(second.element().getKey(), first.element().getKey(), minLevel)) {
+			return first;
+		}
+		return second;
+	}
+
+	/**
+	 * @return the better of the position's children, null if it has none
+	 */
+	private Position<MyHeapEntry<K, V>> betterChild(Position<MyHeapEntry<K, V>> position, boolean minLevel) {
+		if (!_tree.hasLeft(position)) {
+			return null;
+		}
+		return better(_tree.left(position), _tree.hasRight(position) ? _tree.right(position) : null, minLevel);
+	}
+
+	/**
+	 * @return whether the first key belongs above the second on a min level
+	 *         (it is smaller) or on a max level (it is larger)
+	 */
+	private boolean before(K first, K second, boolean minLevel) {
+		int comparison = _comparator.compare(first, second);
+		return minLevel ? comparison < 0 : comparison > 0;
+	}
+
+	/**
+	 * @return whether the position is on an even level, counting the root as
+	 *         level 0
+	 */
+	private boolean isMinLevel(Position<MyHeapEntry<K, V>> position) {
+		boolean minLevel = true;
+		while (!_tree.isRoot(position)) {
+			position = _tree.parent(position);
+			minLevel = !minLevel;
+		}
+		return minLevel;
+	}
+
+	/**
+	 * stores an entry at the given position of the tree and lets the entry
+	 * know where it now lives, without sorting
+	 */
+	private void moveEntry(MyHeapEntry<K, V> entry, Position<MyHeapEntry<K, V>> position) {
+		_tree.replace(position, entry);
+		entry.set_position(position);
+	}
+
+	/**
+	 * A MyHeapEntry that also records the min-max heap holding it, since the
+	 * position of an entry alone cannot tell one heap's tree from another's.
+	 */
+	private static class MinMaxEntry<K, V> extends MyHeapEntry<K, V> {
+
+		// the heap holding this entry, null once removed
+		private MyMinMaxHeap<K, V> _owner;
+
+		private MinMaxEntry(K key, V value) {
+			super(key, value);
+		}
+	}
+}
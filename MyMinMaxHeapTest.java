@@ -0,0 +1,139 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+
+/**
+ * Runs the AdaptablePriorityQueueTest cases against MyMinMaxHeap, plus cases
+ * for the max end of the key order, on a linked and on an array tree.
+ */
+public class MyMinMaxHeapTest extends AdaptablePriorityQueueTest {
+
+	@Override
+	protected AdaptablePriorityQueue<Integer, String> newHeap() {
+		return new MyMinMaxHeap<Integer, String>(new IntegerComparator());
+	}
+
+	@Test
+	public void testRemoveMinAndRemoveMax() {
+		MyMinMaxHeap<Integer, String> heap = new MyMinMaxHeap<Integer, String>(new IntegerComparator());
+		heap.insert(11, "A");
+		heap.insert(13, "B");
+		heap.insert(64, "C");
+		heap.insert(16, "D");
+		heap.insert(44, "E");
+		heap.insert(2, "F");
+
+		assertEquals(2, (int) heap.min().getKey());
+		assertEquals(64, (int) heap.max().getKey());
+		assertEquals(64, (int) heap.removeMax().getKey());
+		assertEquals(2, (int) heap.removeMin().getKey());
+		assertEquals(44, (int) heap.removeMax().getKey());
+
+		List<Integer> actualKeys = new ArrayList<Integer>();
+		while (!heap.isEmpty()) {
+			actualKeys.add(heap.removeMin().getKey());
+		}
+		assertThat(actualKeys, is(Arrays.asList(11, 13, 16)));
+	}
+
+	@Test
+	public void testSingleEntryIsMinAndMax() {
+		MyMinMaxHeap<Integer, String> heap = new MyMinMaxHeap<Integer, String>(new IntegerComparator());
+		Entry<Integer, String> entry = heap.insert(5, "A");
+		assertEquals(entry, heap.min());
+		assertEquals(entry, heap.max());
+		assertEquals(entry, heap.removeMax());
+		assertTrue(heap.isEmpty());
+	}
+
+	@Test
+	public void testReplaceKeyMovesBetweenEnds() {
+		MyMinMaxHeap<Integer, String> heap = new MyMinMaxHeap<Integer, String>(new IntegerComparator());
+		Entry<Integer, String> entry = heap.insert(1, "A");
+		for (int key = 20; key < 40; key++) {
+			heap.insert(key, "v" + key);
+		}
+		assertEquals(1, (int) heap.replaceKey(entry, 99));
+		assertEquals(entry, heap.max());
+		assertEquals(20, (int) heap.min().getKey());
+		heap.replaceKey(entry, 2);
+		assertEquals(entry, heap.min());
+		assertEquals(39, (int) heap.max().getKey());
+	}
+
+	@Test(expected = EmptyPriorityQueueException.class)
+	public void testMaxThrowsEmptyPriorityQueueException() {
+		new MyMinMaxHeap<Integer, String>(new IntegerComparator()).max();
+	}
+
+	/*
+	 * An entry still in another heap is rejected by every operation that
+	 * takes a handle, and neither heap is changed.
+	 */
+	@Test
+	public void testEntryOfAnotherHeapIsRejected() {
+		MyMinMaxHeap<Integer, String> heap = new MyMinMaxHeap<Integer, String>(new IntegerComparator());
+		MyMinMaxHeap<Integer, String> other = new MyMinMaxHeap<Integer, String>(new IntegerComparator());
+		heap.insert(5, "A");
+		Entry<Integer, String> foreign = other.insert(7, "B");
+		try {
+			heap.remove(foreign);
+			fail();
+		} catch (InvalidEntryException e) {
+			// expected
+		}
+		try {
+			heap.replaceKey(foreign, 1);
+			fail();
+		} catch (InvalidEntryException e) {
+			// expected
+		}
+		try {
+			heap.replaceValue(foreign, "C");
+			fail();
+		} catch (InvalidEntryException e) {
+			// expected
+		}
+		assertThat(heap.size(), is(1));
+		assertThat(heap.min().getKey(), is(5));
+		assertThat(other.size(), is(1));
+		assertThat(foreign.getKey(), is(7));
+		assertThat(foreign.getValue(), is("B"));
+	}
+
+	/*
+	 * Takes from alternate ends of an array tree holding every key once, so
+	 * both the min and the max levels get rebuilt after each removal.
+	 */
+	@Test
+	public void testAlternatingEndsOnArrayTree() {
+		MyMinMaxHeap<Integer, String> heap = new MyMinMaxHeap<Integer, String>(new IntegerComparator(),
+				new MyArrayHeapTree<MyHeapEntry<Integer, String>>());
+		// 37 and 99 are coprime, so this inserts 1..99 in a scrambled order
+		for (int i = 0; i < 99; i++) {
+			int key = i * 37 % 99 + 1;
+			heap.insert(key, "v" + key);
+		}
+		int low = 1;
+		int high = 99;
+		while (!heap.isEmpty()) {
+			assertEquals(low++, (int) heap.removeMin().getKey());
+			if (!heap.isEmpty()) {
+				assertEquals(high--, (int) heap.removeMax().getKey());
+			}
+			assertEquals(high - low + 1, heap.size());
+		}
+	}
+}
@@ -0,0 +1,390 @@
+package heap;
+
+import java.util.Comparator;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+import net.datastructures.Position;
+
+/**
+ * An implementation of an adaptable priority queue by means of a pairing heap:
+ * a heap-ordered tree in which a node may have any number of children, kept as
+ * a linked list. Two trees are joined by "linking" them, which makes the root
+ * with the larger key the first child of the other root in O(1) time.
+ *
+ * insert() links a new one node tree with the root. Lowering a key cuts the
+ * entry's subtree out of the tree and links it with the root, also in O(1)
+ * time, which is what makes this heap a good fit for Dijkstra or A* searches
+ * that mostly decrease keys. removeMin() and remove() merge the children of
+ * the removed node in two passes (pairwise left to right, then the pairs right
+ * to left), which costs O(log n) amortized time.
+ *
+ * merge() melds another pairing heap into this one by linking the two roots,
+ * in O(1) time. Each node refers to a membership record rather than to its
+ * heap directly; merging points the other heap's record at this heap's, so
+ * the entries that move are not visited and their handles stay valid.
+ *
+ * Entries are the same MyHeapEntry handles MyHeap hands out, and each one
+ * stores its tree node as its position, so code written against MyHeap only
+ * needs to change the constructor it calls. Keys follow the same rules as
+ * MyHeap.
+ */
+
+public class MyPairingHeap<K, V> implements AdaptablePriorityQueue<K, V> {
+
+	private PairingNode<K, V> _root;
+	private int _size;
+	private Comparator<K> _comparator;
+	// the record every node of this heap leads to, replaced when merged away
+	private Membership _membership;
+
+	/**
+	 * Creates an empty heap with the given comparator.
+	 *
+	 * @param comparator
+	 *            the comparator to be used for heap keys
+	 */
+	public MyPairingHeap(Comparator<K> comparator) {
+		_comparator = comparator;
+		_membership = new Membership();
+	}
+
+	/**
+	 * Sets the comparator used for comparing items in the heap to the
+	 * comparator passed in.
+	 *
+	 * @param comparator
+	 *            the comparator to be used for heap keys
+	 * @throws IllegalStateException
+	 *             if priority queue is not empty
+	 * @throws IllegalArgumentException
+	 *             if null comparator is passed in
+	 */
+	public void setComparator(Comparator<K> comparator) throws IllegalStateException, IllegalArgumentException {
+		if (!isEmpty()) {
+			throw new IllegalStateException("priority queue is not empty");
+		}
+		if (comparator == null) {
+			throw new IllegalArgumentException("null comparator");
+		}
+		_comparator = comparator;
+	}
+
+	/**
+	 * Returns the size of the heap. This method runs in O(1) time.
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Returns whether the heap is empty. This method runs in O(1) time.
+	 */
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * Returns but does not remove an entry with minimum key. This method runs
+	 * in O(1) time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the heap is empty
+	 */
+	public Entry<K, V> min() throws EmptyPriorityQueueException {
+		if (isEmpty()) {
+			throw new EmptyPriorityQueueException("heap is empty");
+		}
+		return _root._entry;
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the entry created. This method runs
+	 * in O(1) time.
+	 *
+	 * @throws InvalidKeyException
+	 *             if the key is not suitable for this heap
+	 */
+	public Entry<K, V> insert(K key, V value) throws InvalidKeyException {
+		MyHeap.checkKey(key);
+		MyHeapEntry<K, V> entry = new MyHeapEntry<K, V>(key, value);
+		PairingNode<K, V> node = new PairingNode<K, V>(entry, _membership);
+		entry.set_position(node);
+		_root = link(_root, node);
+		_size++;
+		return entry;
+	}
+
+	/**
+	 * Removes and returns an entry with minimum key. This method runs in
+	 * O(log n) amortized time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the heap is empty
+	 */
+	public Entry<K, V> removeMin() throws EmptyPriorityQueueException {
+		return remove(min());
+	}
+
+	/**
+	 * Removes and returns the given entry from the heap. This method runs in
+	 * O(log n) amortized time.
+	 *
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this heap
+	 */
+	public Entry<K, V> remove(Entry<K, V> entry) throws InvalidEntryException {
+		MyHeapEntry<K, V> checkedEntry = checkAndConvertEntry(entry);
+		PairingNode<K, V> node = (PairingNode<K, V>) checkedEntry.get_position();
+
+		PairingNode<K, V> children = mergePairs(node._child);
+		node._child = null;
+		if (node == _root) {
+			_root = children;
+		} else {
+			cut(node);
+			_root = link(_root, children);
+		}
+		node._membership = null;
+		checkedEntry.set_position(null);
+		_size--;
+		return checkedEntry;
+	}
+
+	/**
+	 * Replaces the key of the given entry. Lowering a key runs in O(1) time,
+	 * raising it in O(log n) amortized time.
+	 *
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this heap
+	 * @throws InvalidKeyException
+	 *             if the key is not suitable for this heap
+	 */
+	public K replaceKey(Entry<K, V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		MyHeapEntry<K, V> checkedEntry = checkAndConvertEntry(entry);
+		MyHeap.checkKey(key);
+		PairingNode<K, V> node = (PairingNode<K, V>) checkedEntry.get_position();
+
+		K oldKey = checkedEntry.getKey();
+		checkedEntry.setKey(key);
+		if (_comparator.compare(key, oldKey) <= 0) {
+			// the subtree stays heap ordered, it only has to beat the root
+			if (node != _root) {
+				cut(node);
+				_root = link(_root, node);
+			}
+		} else {
+			// the children may now be smaller, so they are merged on their own
+			// and the node goes back in as a single node tree
+			PairingNode<K, V> children = mergePairs(node._child);
+			node._child = null;
+			if (node == _root) {
+				_root = link(children, node);
+			} else {
+				cut(node);
+				_root = link(link(_root, children), node);
+			}
+		}
+		return oldKey;
+	}
+
+	/**
+	 * Moves every entry of the other heap into this one, leaving the other
+	 * heap empty. The entries handed out by either heap stay valid and now
+	 * belong to this heap. Both heaps must order keys the same way. This
+	 * method runs in O(1) time.
+	 *
+	 * @param other
+	 *            the heap to empty into this one
+	 * @throws IllegalArgumentException
+	 *             if other is null or this heap
+	 */
+	public void merge(MyPairingHeap<K, V> other) throws IllegalArgumentException {
+		if (other == null || other == this) {
+			throw new IllegalArgumentException("cannot merge a heap with itself or null");
+		}
+		if (other.isEmpty()) {
+			return;
+		}
+		_root = link(_root, other._root);
+		_size += other._size;
+		other._membership._forward = _membership;
+		other._membership = new Membership();
+		other._root = null;
+		other._size = 0;
+	}
+
+	/**
+	 * Replaces the value of the given entry. This method runs in O(1) time.
+	 *
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException
+	 *             if the entry is not in this heap
+	 */
+	public V replaceValue(Entry<K, V> entry, V value) throws InvalidEntryException {
+		MyHeapEntry<K, V> checkedEntry = checkAndConvertEntry(entry);
+		V oldValue = checkedEntry.getValue();
+		checkedEntry.setValue(value);
+		return oldValue;
+	}
+
+	/**
+	 * Determines whether a given entry is currently stored in this heap and
+	 * converts it to a MyHeapEntry.
+	 *
+	 * @throws InvalidEntryException
+	 *             if the entry is not of the proper class or not in this heap
+	 */
+	@SuppressWarnings("unchecked")
+	private MyHeapEntry<K, V> checkAndConvertEntry(Entry<K, V> entry) throws InvalidEntryException {
+		if (!(entry instanceof MyHeapEntry)) {
+			throw new InvalidEntryException("Invalid entry");
+		}
+		MyHeapEntry<K, V> checkedEntry = (MyHeapEntry<K, V>) entry;
+		Position<MyHeapEntry<K, V>> position = checkedEntry.get_position();
+		if (!(position instanceof PairingNode) || !owns((PairingNode<K, V>) position)) {
+			throw new InvalidEntryException("entry not in heap");
+		}
+		return checkedEntry;
+	}
+
+	/**
+	 * Follows the node's membership record to the heap it belongs to now,
+	 * pointing the node straight at the final record so that later checks
+	 * after several merges take a single step.
+	 */
+	private boolean owns(PairingNode<K, V> node) {
+		Membership membership = node._membership;
+		if (membership == null) {
+			return false;
+		}
+		while (membership._forward != null) {
+			membership = membership._forward;
+		}
+		Membership shortcut = node._membership;
+		while (shortcut._forward != null) {
+			Membership next = shortcut._forward;
+			shortcut._forward = membership;
+			shortcut = next;
+		}
+		node._membership = membership;
+		return membership == _membership;
+	}
+
+	/**
+	 * Joins two trees, either of which may be null, by making the root with
+	 * the larger key the first child of the other. Both roots must have no
+	 * siblings.
+	 *
+	 * @return the root of the joined tree
+	 */
+	private PairingNode<K, V> link(PairingNode<K, V> first, PairingNode<K, V> second) {
+		if (first == null) {
+			return second;
+		}
+		if (second == null) {
+			return first;
+		}
+		if (_comparator.compare(second._entry.getKey(), first._entry.getKey()) < 0) {
+			PairingNode<K, V> swap = first;
+			first = second;
+			second = swap;
+		}
+		second._next = first._child;
+		if (first._child != null) {
+			first._child._prev = second;
+		}
+		second._prev = first;
+		first._child = second;
+		return first;
+	}
+
+	/**
+	 * Unhooks a node that is not the root, together with its subtree, from
+	 * its parent and siblings.
+	 */
+	private void cut(PairingNode<K, V> node) {
+		if (node._prev._child == node) {
+			node._prev._child = node._next;
+		} else {
+			node._prev._next = node._next;
+		}
+		if (node._next != null) {
+			node._next._prev = node._prev;
+		}
+		node._prev = null;
+		node._next = null;
+	}
+
+	/**
+	 * Merges a list of sibling trees into one: first every pair of neighbours
+	 * is linked, left to right, and then the results are linked into a single
+	 * tree from the last pair back to the first. Works without recursion, so a
+	 * long list of children cannot overflow the stack.
+	 *
+	 * @return the root of the merged tree, null if the list was empty
+	 */
+	private PairingNode<K, V> mergePairs(PairingNode<K, V> first) {
+		// first pass, the linked pairs are pushed onto a stack through _next
+		PairingNode<K, V> pairs = null;
+		while (first != null) {
+			PairingNode<K, V> a = first;
+			PairingNode<K, V> b = a._next;
+			first = b == null ? null : b._next;
+			a._prev = null;
+			a._next = null;
+			if (b != null) {
+				b._prev = null;
+				b._next = null;
+				a = link(a, b);
+			}
+			a._next = pairs;
+			pairs = a;
+		}
+
+		// second pass, popping the stack visits the pairs right to left
+		PairingNode<K, V> merged = null;
+		while (pairs != null) {
+			PairingNode<K, V> next = pairs._next;
+			pairs._next = null;
+			merged = link(merged, pairs);
+			pairs = next;
+		}
+		return merged;
+	}
+
+	/*
+	 * A node of the pairing heap and the position of its entry. _prev is the
+	 * previous sibling, or the parent for a first child.
+	 */
+	private static class PairingNode<K, V> implements Position<MyHeapEntry<K, V>> {
+
+		private final MyHeapEntry<K, V> _entry;
+		private Membership _membership;
+		private PairingNode<K, V> _child;
+		private PairingNode<K, V> _next;
+		private PairingNode<K, V> _prev;
+
+		private PairingNode(MyHeapEntry<K, V> entry, Membership membership) {
+			_entry = entry;
+			_membership = membership;
+		}
+
+		public MyHeapEntry<K, V> element() {
+			return _entry;
+		}
+	}
+
+	/*
+	 * Identifies the heap a node belongs to. A heap that was merged into
+	 * another forwards its old record to the other heap's record.
+	 */
+	private static class Membership {
+
+		private Membership _forward;
+	}
+}
@@ -0,0 +1,98 @@
+package heap;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+
+/**
+ * Runs the AdaptablePriorityQueueTest cases against MyPairingHeap, plus cases
+ * for the way it handles key changes and merges.
+ */
+public class MyPairingHeapTest extends AdaptablePriorityQueueTest {
+
+	@Override
+	protected AdaptablePriorityQueue<Integer, String> newHeap() {
+		return new MyPairingHeap<Integer, String>(new IntegerComparator());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSetComparatorThrowsIllegalStateException() {
+		MyPairingHeap<Integer, String> heap = new MyPairingHeap<Integer, String>(new IntegerComparator());
+		heap.insert(1, "A");
+		heap.setComparator(new IntegerComparator());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetComparatorThrowsIllegalArgumentException() {
+		MyPairingHeap<Integer, String> heap = new MyPairingHeap<Integer, String>(new IntegerComparator());
+		heap.setComparator(null);
+	}
+
+	/*
+	 * Lowering the key of an entry deep in the tree moves it to the root.
+	 */
+	@Test
+	public void testDecreaseKeyOfDeepEntry() {
+		MyPairingHeap<Integer, String> heap = new MyPairingHeap<Integer, String>(new IntegerComparator());
+		List<Entry<Integer, String>> entries = new ArrayList<Entry<Integer, String>>();
+		for (int key = 50; key < 90; key++) {
+			entries.add(heap.insert(key, "v" + key));
+		}
+		// removing the minimum pairs the other entries up into a deeper tree
+		heap.removeMin();
+		Entry<Integer, String> deep = entries.get(30);
+		assertEquals(80, (int) heap.replaceKey(deep, 1));
+		assertEquals(deep, heap.min());
+		assertEquals(deep, heap.removeMin());
+		assertEquals(51, (int) heap.removeMin().getKey());
+	}
+
+	/*
+	 * Handles from both heaps stay valid after a merge, also after the merged
+	 * heap is merged again.
+	 */
+	@Test
+	public void testMerge() {
+		MyPairingHeap<Integer, String> heap = new MyPairingHeap<Integer, String>(new IntegerComparator());
+		MyPairingHeap<Integer, String> other = new MyPairingHeap<Integer, String>(new IntegerComparator());
+		MyPairingHeap<Integer, String> third = new MyPairingHeap<Integer, String>(new IntegerComparator());
+		Entry<Integer, String> entry1 = heap.insert(30, "A");
+		Entry<Integer, String> entry2 = other.insert(20, "B");
+		other.insert(40, "C");
+		Entry<Integer, String> entry3 = third.insert(50, "D");
+
+		other.merge(third);
+		heap.merge(other);
+		assertEquals(4, heap.size());
+		assertTrue(other.isEmpty());
+		assertTrue(third.isEmpty());
+
+		heap.replaceKey(entry3, 10);
+		assertEquals(entry3, heap.removeMin());
+		assertEquals(entry2, heap.remove(entry2));
+		assertEquals(entry1, heap.removeMin());
+		assertEquals(40, (int) heap.removeMin().getKey());
+
+		// the emptied heaps keep working on their own
+		other.insert(5, "E");
+		assertEquals(1, other.size());
+		assertTrue(heap.isEmpty());
+	}
+
+	@Test(expected = InvalidEntryException.class)
+	public void testMergedAwayHeapRejectsOldEntries() {
+		MyPairingHeap<Integer, String> heap = new MyPairingHeap<Integer, String>(new IntegerComparator());
+		MyPairingHeap<Integer, String> other = new MyPairingHeap<Integer, String>(new IntegerComparator());
+		Entry<Integer, String> entry = other.insert(20, "B");
+		heap.merge(other);
+		other.remove(entry);
+	}
+
+}
@@ -0,0 +1,442 @@
+package heap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * An adaptable priority queue with int keys (1..99, as in MyHeap) whose
+ * bookkeeping lives outside the Java heap. One direct buffer holds, as int
+ * arrays:
+ *
+ * - the key stored in every heap slot,
+ * - the handle stored in every heap slot,
+ * - the heap slot of every handle,
+ * - a generation stamp for every handle,
+ * - the stack of handles that are free for reuse.
+ *
+ * A handle is a small int naming one inserted item for as long as it stays in
+ * the queue; only the user's values are kept on the Java heap, in an Object[]
+ * indexed by handle. So a queue of tens of millions of entries is a handful of
+ * large objects for the garbage collector instead of tens of millions of small
+ * ones.
+ *
+ * The entries handed out by insert() are tiny (handle, generation) pairs that
+ * the queue itself does not keep. Once the item is removed its handle is
+ * reused and its generation bumped, so a stale entry is recognised and
+ * rejected. remove() and removeMin() return an entry equal to the one
+ * insert() handed out, which keeps the key and value the item had when it
+ * was removed.
+ *
+ * close() drops the buffer and the values at once. The native memory of a
+ * direct buffer is returned when the buffer object is collected, which after
+ * close() is the next time the collector runs; since all of it is one
+ * buffer, that is a single object to collect. After close() every method
+ * and every entry handed out fails fast.
+ */
+
+public class OffHeapIntKeyHeap<V> implements AdaptablePriorityQueue<Integer, V>, AutoCloseable {
+
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	// the int arrays laid out one after another in the buffer
+	private static final int KEYS = 0;
+	private static final int SLOT_HANDLE = 1;
+	private static final int HANDLE_SLOT = 2;
+	private static final int GENERATION = 3;
+	private static final int FREE_HANDLES = 4;
+	private static final int ARRAYS = 5;
+
+	private IntBuffer _memory;
+	private Object[] _values;
+	private int _capacity;
+	private int _size;
+	// handles below this have been used at least once
+	private int _nextHandle;
+	private int _freeCount;
+
+	/**
+	 * Creates an empty queue.
+	 */
+	public OffHeapIntKeyHeap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty queue with room for the given number of entries before
+	 * its storage has to grow.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if capacity is not positive or too large to address
+	 */
+	public OffHeapIntKeyHeap(int capacity) throws IllegalArgumentException {
+		if (capacity < 1 || capacity > Integer.MAX_VALUE / (ARRAYS * 4)) {
+			throw new IllegalArgumentException("capacity out of range");
+		}
+		_memory = allocate(capacity);
+		_values = new Object[capacity];
+		_capacity = capacity;
+	}
+
+	public int size() {
+		checkOpen();
+		return _size;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Returns but does not remove an entry with minimum key. This method runs
+	 * in O(1) time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the queue is empty
+	 */
+	public Entry<Integer, V> min() throws EmptyPriorityQueueException {
+		if (isEmpty()) {
+			throw new EmptyPriorityQueueException("heap is empty");
+		}
+		int handle = get(SLOT_HANDLE, 0);
+		return new OffHeapEntry<V>(this, handle, get(GENERATION, handle));
+	}
+
+	public Entry<Integer, V> insert(Integer key, V value) throws InvalidKeyException {
+		if (key == null) {
+			throw new InvalidKeyException("null key");
+		}
+		return insert(key.intValue(), value);
+	}
+
+	/**
+	 * Inserts a key-value pair and returns a handle entry for it. This method
+	 * runs in O(log n) amortized time.
+	 *
+	 * @throws InvalidKeyException
+	 *             if the key is not in 1..99
+	 */
+	public Entry<Integer, V> insert(int key, V value) throws InvalidKeyException {
+		checkOpen();
+		checkKey(key);
+		if (_size == _capacity) {
+			grow();
+		}
+		int handle = _freeCount > 0 ? get(FREE_HANDLES, --_freeCount) : _nextHandle++;
+		_values[handle] = value;
+		upSort(handle, key, _size++);
+		return new OffHeapEntry<V>(this, handle, get(GENERATION, handle));
+	}
+
+	/**
+	 * Removes the entry with minimum key and returns it. This method runs in
+	 * O(log n) time.
+	 *
+	 * @throws EmptyPriorityQueueException
+	 *             if the queue is empty
+	 */
+	public Entry<Integer, V> removeMin() throws EmptyPriorityQueueException {
+		if (isEmpty()) {
+			throw new EmptyPriorityQueueException("heap is empty");
+		}
+		return removeHandle(get(SLOT_HANDLE, 0));
+	}
+
+	/**
+	 * Removes the given entry and returns it. This method runs in O(log n)
+	 * time.
+	 *
+	 * @throws InvalidEntryException
+	 *             if the entry is not live in this queue
+	 */
+	public Entry<Integer, V> remove(Entry<Integer, V> entry) throws InvalidEntryException {
+		return removeHandle(checkHandle(entry));
+	}
+
+	public Integer replaceKey(Entry<Integer, V> entry, Integer key) throws InvalidEntryException, InvalidKeyException {
+		if (key == null) {
+			throw new InvalidKeyException("null key");
+		}
+		return replaceKey(entry, key.intValue());
+	}
+
+	/**
+	 * Replaces the key of the given entry. This method runs in O(log n) time.
+	 *
+	 * @return the old key
+	 * @throws InvalidEntryException
+	 *             if the entry is not live in this queue
+	 * @throws InvalidKeyException
+	 *             if the key is not in 1..99
+	 */
+	public int replaceKey(Entry<Integer, V> entry, int key) throws InvalidEntryException, InvalidKeyException {
+		int handle = checkHandle(entry);
+		checkKey(key);
+		int slot = get(HANDLE_SLOT, handle);
+		int oldKey = get(KEYS, slot);
+		if (slot > 0 && key < get(KEYS, (slot - 1) / 2)) {
+			upSort(handle, key, slot);
+		} else {
+			downSort(handle, key, slot);
+		}
+		return oldKey;
+	}
+
+	/**
+	 * Replaces the value of the given entry. This method runs in O(1) time.
+	 *
+	 * @return the old value
+	 * @throws InvalidEntryException
+	 *             if the entry is not live in this queue
+	 */
+	@SuppressWarnings("unchecked")
+	public V replaceValue(Entry<Integer, V> entry, V value) throws InvalidEntryException {
+		int handle = checkHandle(entry);
+		V oldValue = (V) _values[handle];
+		_values[handle] = value;
+		return oldValue;
+	}
+
+	/**
+	 * Releases the off-heap storage and the values. The queue and its entries
+	 * cannot be used afterwards; closing it again does nothing.
+	 */
+	public void close() {
+		_memory = null;
+		_values = null;
+		_size = 0;
+	}
+
+	/**
+	 * Takes the handle out of the heap, refilling its slot with the last
+	 * entry, and puts the handle up for reuse under a new generation.
+	 */
+	@SuppressWarnings("unchecked")
+	private Entry<Integer, V> removeHandle(int handle) {
+		int slot = get(HANDLE_SLOT, handle);
+		int key = get(KEYS, slot);
+		V value = (V) _values[handle];
+
+		int last = --_size;
+		if (slot != last) {
+			int lastHandle = get(SLOT_HANDLE, last);
+			int lastKey = get(KEYS, last);
+			if (slot > 0 && lastKey < get(KEYS, (slot - 1) / 2)) {
+				upSort(lastHandle, lastKey, slot);
+			} else {
+				downSort(lastHandle, lastKey, slot);
+			}
+		}
+
+		int generation = get(GENERATION, handle);
+		_values[handle] = null;
+		set(HANDLE_SLOT, handle, -1);
+		set(GENERATION, handle, generation + 1);
+		set(FREE_HANDLES, _freeCount++, handle);
+		return new RemovedEntry<V>(this, handle, generation, key, value);
+	}
+
+	/**
+	 * Walks a hole up from the given slot, moving every parent with a larger
+	 * key one level down, and stores the handle where it comes to rest.
+	 */
+	private void upSort(int handle, int key, int slot) {
+		while (slot > 0) {
+			int parent = (slot - 1) / 2;
+			int parentKey = get(KEYS, parent);
+			if (key >= parentKey) {
+				break;
+			}
+			place(get(SLOT_HANDLE, parent), parentKey, slot);
+			slot = parent;
+		}
+		place(handle, key, slot);
+	}
+
+	/**
+	 * Walks a hole down from the given slot, moving the smaller child one level
+	 * up while it is smaller than the key, and stores the handle where it
+	 * comes to rest.
+	 */
+	private void downSort(int handle, int key, int slot) {
+		int half = _size / 2;
+		while (slot < half) {
+			int child = 2 * slot + 1;
+			int childKey = get(KEYS, child);
+			if (child + 1 < _size && get(KEYS, child + 1) < childKey) {
+				child++;
+				childKey = get(KEYS, child);
+			}
+			if (key <= childKey) {
+				break;
+			}
+			place(get(SLOT_HANDLE, child), childKey, slot);
+			slot = child;
+		}
+		place(handle, key, slot);
+	}
+
+	private void place(int handle, int key, int slot) {
+		set(KEYS, slot, key);
+		set(SLOT_HANDLE, slot, handle);
+		set(HANDLE_SLOT, handle, slot);
+	}
+
+	/**
+	 * Doubles the storage, copying every int array to its new offset.
+	 */
+	private void grow() {
+		if (_capacity > Integer.MAX_VALUE / (ARRAYS * 8)) {
+			throw new IllegalStateException("heap is full");
+		}
+		int capacity = _capacity * 2;
+		IntBuffer memory = allocate(capacity);
+		for (int array = 0; array < ARRAYS; array++) {
+			IntBuffer source = _memory.duplicate();
+			source.position(array * _capacity).limit((array + 1) * _capacity);
+			memory.position(array * capacity);
+			memory.put(source);
+		}
+		memory.clear();
+		_memory = memory;
+		_values = Arrays.copyOf(_values, capacity);
+		_capacity = capacity;
+	}
+
+	private static IntBuffer allocate(int capacity) {
+		return ByteBuffer.allocateDirect(ARRAYS * capacity * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+
+	private int get(int array, int index) {
+		return _memory.get(array * _capacity + index);
+	}
+
+	private void set(int array, int index, int value) {
+		_memory.put(array * _capacity + index, value);
+	}
+
+	/**
+	 * Returns the handle of an entry that is live in this queue.
+	 *
+	 * @throws InvalidEntryException
+	 *             if the entry is not a handle of this queue or is stale
+	 */
+	private int checkHandle(Entry<Integer, V> entry) throws InvalidEntryException {
+		checkOpen();
+		if (!(entry instanceof OffHeapEntry) || ((OffHeapEntry<?>) entry)._owner != this) {
+			throw new InvalidEntryException("Invalid entry");
+		}
+		OffHeapEntry<?> handleEntry = (OffHeapEntry<?>) entry;
+		if (get(GENERATION, handleEntry._handle) != handleEntry._generation) {
+			throw new InvalidEntryException("entry not in heap");
+		}
+		return handleEntry._handle;
+	}
+
+	private boolean isLive(int handle, int generation) {
+		return _memory != null && get(GENERATION, handle) == generation;
+	}
+
+	private void checkOpen() {
+		if (_memory == null) {
+			throw new IllegalStateException("heap is closed");
+		}
+	}
+
+	private static void checkKey(int key) throws InvalidKeyException {
+		if (key < 1 || key > 99) {
+			throw new InvalidKeyException("key out of appropriate range");
+		}
+	}
+
+	/*
+	 * The entry handed out by insert() and min(): it names a handle and the
+	 * generation that handle had at the time, and reads the key and value from
+	 * the queue while that generation is current.
+	 */
+	private static class OffHeapEntry<V> implements Entry<Integer, V> {
+
+		private final OffHeapIntKeyHeap<V> _owner;
+		private final int _handle;
+		private final int _generation;
+
+		private OffHeapEntry(OffHeapIntKeyHeap<V> owner, int handle, int generation) {
+			_owner = owner;
+			_handle = handle;
+			_generation = generation;
+		}
+
+		/**
+		 * @throws InvalidEntryException
+		 *             if the entry has been removed from the queue
+		 */
+		public Integer getKey() {
+			checkLive();
+			return _owner.get(KEYS, _owner.get(HANDLE_SLOT, _handle));
+		}
+
+		/**
+		 * @throws InvalidEntryException
+		 *             if the entry has been removed from the queue
+		 */
+		@SuppressWarnings("unchecked")
+		public V getValue() {
+			checkLive();
+			return (V) _owner._values[_handle];
+		}
+
+		private void checkLive() {
+			if (!_owner.isLive(_handle, _generation)) {
+				throw new InvalidEntryException("entry not in heap");
+			}
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof OffHeapEntry)) {
+				return false;
+			}
+			OffHeapEntry<?> entry = (OffHeapEntry<?>) other;
+			return _owner == entry._owner && _handle == entry._handle && _generation == entry._generation;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * _handle + _generation;
+		}
+	}
+
+	/*
+	 * The entry returned by remove() and removeMin(): equal to the entry
+	 * insert() handed out for the item, but holding the key and value itself,
+	 * since the queue no longer does.
+	 */
+	private static class RemovedEntry<V> extends OffHeapEntry<V> {
+
+		private final int _key;
+		private final V _value;
+
+		private RemovedEntry(OffHeapIntKeyHeap<V> owner, int handle, int generation, int key, V value) {
+			super(owner, handle, generation);
+			_key = key;
+			_value = value;
+		}
+
+		@Override
+		public Integer getKey() {
+			return _key;
+		}
+
+		@Override
+		public V getValue() {
+			return _value;
+		}
+	}
+}
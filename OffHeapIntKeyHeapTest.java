@@ -0,0 +1,89 @@
+package heap;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+
+/**
+ * Runs the AdaptablePriorityQueueTest cases against OffHeapIntKeyHeap, on
+ * storage small enough to grow during most of them, plus cases for stale
+ * handles and closing.
+ */
+public class OffHeapIntKeyHeapTest extends AdaptablePriorityQueueTest {
+
+	@Override
+	protected AdaptablePriorityQueue<Integer, String> newHeap() {
+		return new OffHeapIntKeyHeap<String>(2);
+	}
+
+	/*
+	 * The entry remove() returns equals the handle and keeps the key and
+	 * value, while the handle itself no longer reaches the queue.
+	 */
+	@Test
+	public void testRemovedEntryKeepsKeyAndValue() {
+		OffHeapIntKeyHeap<String> heap = new OffHeapIntKeyHeap<String>();
+		Entry<Integer, String> entry = heap.insert(11, "A");
+		heap.insert(13, "B");
+
+		Entry<Integer, String> removed = heap.remove(entry);
+		assertEquals(entry, removed);
+		assertEquals(11, (int) removed.getKey());
+		assertEquals("A", removed.getValue());
+		try {
+			entry.getKey();
+			fail();
+		} catch (InvalidEntryException e) {
+			// expected
+		}
+		// the handle is reused, but the removed entry still names its item
+		Entry<Integer, String> next = heap.insert(20, "C");
+		assertFalse(next.equals(removed));
+		assertEquals("A", removed.getValue());
+		heap.close();
+	}
+
+	/*
+	 * After an item is removed its handle is reused, the old entry must not
+	 * reach the new item.
+	 */
+	@Test(expected = InvalidEntryException.class)
+	public void testStaleEntryIsRejected() {
+		OffHeapIntKeyHeap<String> heap = new OffHeapIntKeyHeap<String>();
+		Entry<Integer, String> stale = heap.insert(5, "A");
+		heap.remove(stale);
+		heap.insert(6, "B");
+		heap.replaceKey(stale, 1);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testClosedHeapCannotBeUsed() {
+		OffHeapIntKeyHeap<String> heap = new OffHeapIntKeyHeap<String>();
+		heap.insert(5, "A");
+		heap.close();
+		heap.insert(6, "B");
+	}
+
+	/*
+	 * Entries handed out before close() fail instead of reading storage that
+	 * is gone, and closing twice does nothing.
+	 */
+	@Test
+	public void testClosedHeapEntriesFailFast() {
+		OffHeapIntKeyHeap<String> heap = new OffHeapIntKeyHeap<String>();
+		Entry<Integer, String> entry = heap.insert(5, "A");
+		heap.close();
+		heap.close();
+		try {
+			entry.getKey();
+			fail();
+		} catch (InvalidEntryException e) {
+			// expected
+		}
+	}
+
+}
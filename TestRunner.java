@@ -18,7 +18,12 @@ import org.junit.runner.notification.Failure;
  */
 public class TestRunner {
    public static void main(String[] args) {
-      Result result = JUnitCore.runClasses(MyLinkedHeapTreeTest.class, MyHeapTest.class);
+      Result result = JUnitCore.runClasses(MyLinkedHeapTreeTest.class, MyHeapTest.class, MyArrayHeapTreeTest.class,
+            IntKeyHeapTest.class, BucketHeapTest.class, MyDaryHeapTest.class,
+            MultiQueueHeapTest.class, MyBlockingHeapTest.class,
+            OffHeapIntKeyHeapTest.class, ExternalMyHeapTest.class, HeapMetricsTest.class,
+            MyPairingHeapTest.class, MyBoundedHeapTest.class, MyMinMaxHeapTest.class,
+            IntIndexedHeapTest.class, KWayMergeTest.class, TimerSchedulerTest.class);
       for (Failure failure : result.getFailures()) {
          System.out.println(failure.toString());
       }
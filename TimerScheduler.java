@@ -0,0 +1,511 @@
+package heap;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import net.datastructures.Entry;
+
+/**
+ * Runs tasks after a delay, for the timeouts, retries and lease expiries of
+ * which a server keeps very many and cancels most before they are due. Time
+ * is cut into ticks of a fixed length, and a task is due at the first tick
+ * boundary at or after its deadline.
+ *
+ * Deadlines less than 2^24 ticks away (four and a half hours with a one
+ * millisecond tick) go into a hierarchical timing wheel: four levels of 64
+ * slots, where a slot of level L spans 64^L ticks and holds a doubly linked
+ * list of timeouts, so schedule() and cancel() run in O(1) time. When the
+ * lowest level wraps around, the slot of the level above that is now current
+ * is emptied into the levels below it, the way a clock's minute hand moves
+ * the hour along. Deadlines further away go into a MyHeap keyed by deadline
+ * and are moved into the wheel, in O(log n) time each, once they come within
+ * its span; only the heap's minimum is looked at on every tick.
+ *
+ * advance() fires every task that has become due onto the executor. start()
+ * runs a daemon thread that calls it once per tick until close(). Tasks run
+ * on the executor and never on the calling or driving thread, and the
+ * scheduler may be used from any thread.
+ */
+
+public class TimerScheduler implements Closeable {
+
+	private static final int SLOT_BITS = 6;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int LEVELS = 4;
+	// deadlines this many ticks away or more go to the overflow heap
+	private static final long WHEEL_SPAN = 1L << (SLOT_BITS * LEVELS);
+
+	private final long _tickNanos;
+	private final Executor _executor;
+	private final LongSupplier _clock;
+	private final long _start;
+	private final ReentrantLock _lock;
+	// _wheel[level][slot] is the first timeout of the slot's list
+	private final Timeout[][] _wheel;
+	private final MyHeap<Long, Timeout> _overflow;
+	// the last tick whose due tasks were fired
+	private long _tick;
+	private int _pending;
+	private Thread _driver;
+	private volatile boolean _closed;
+
+	/**
+	 * Creates a scheduler with the given tick length that fires tasks onto
+	 * the executor.
+	 *
+	 * @param tick
+	 *            the length of a tick, the resolution of deadlines
+	 * @param unit
+	 *            the unit of tick
+	 * @param executor
+	 *            runs the tasks that are due
+	 * @throws IllegalArgumentException
+	 *             if the tick is not positive or executor is null
+	 */
+	public TimerScheduler(long tick, TimeUnit unit, Executor executor) throws IllegalArgumentException {
+		this(tick, unit, executor, System::nanoTime);
+	}
+
+	/**
+	 * Creates a scheduler that reads the time in nanoseconds from the given
+	 * clock, so tests can move time along themselves.
+	 */
+	TimerScheduler(long tick, TimeUnit unit, Executor executor, LongSupplier clock) throws IllegalArgumentException {
+		if (tick <= 0) {
+			throw new IllegalArgumentException("tick must be positive");
+		}
+		if (executor == null) {
+			throw new IllegalArgumentException("null executor");
+		}
+		_tickNanos = Math.max(1, unit.toNanos(tick));
+		_executor = executor;
+		_clock = clock;
+		_start = clock.getAsLong();
+		_lock = new ReentrantLock();
+		_wheel = new Timeout[LEVELS][SLOTS];
+		_overflow = new MyHeap<Long, Timeout>(Comparator.<Long> naturalOrder());
+	}
+
+	/**
+	 * Schedules a task to run once the delay has passed. A delay that is not
+	 * positive runs the task on the next tick. This method runs in O(1) time,
+	 * or O(log n) time for a deadline beyond the span of the wheel.
+	 *
+	 * @return a handle that cancels the task
+	 * @throws IllegalArgumentException
+	 *             if task is null
+	 * @throws IllegalStateException
+	 *             if the scheduler is closed
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit)
+			throws IllegalArgumentException, IllegalStateException {
+		if (task == null) {
+			throw new IllegalArgumentException("null task");
+		}
+		Timeout timeout = new Timeout(this, task);
+		_lock.lock();
+		try {
+			if (_closed) {
+				throw new IllegalStateException("scheduler is closed");
+			}
+			timeout._deadline = deadline(delay, unit);
+			place(timeout);
+			_pending++;
+		} finally {
+			_lock.unlock();
+		}
+		return timeout;
+	}
+
+	/**
+	 * Moves the deadline of a pending task to the given delay from now. This
+	 * method runs in O(1) time, or O(log n) time if either deadline is beyond
+	 * the span of the wheel.
+	 *
+	 * @return false if the task already fired or was cancelled
+	 * @throws IllegalArgumentException
+	 *             if the timeout belongs to another scheduler
+	 */
+	public boolean reschedule(Timeout timeout, long delay, TimeUnit unit) throws IllegalArgumentException {
+		checkOwner(timeout);
+		_lock.lock();
+		try {
+			if (timeout._state != Timeout.PENDING) {
+				return false;
+			}
+			unplace(timeout);
+			timeout._deadline = deadline(delay, unit);
+			place(timeout);
+			return true;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Cancels a pending task. This method runs in O(1) time, or O(log n) time
+	 * for a deadline beyond the span of the wheel.
+	 *
+	 * @return false if the task already fired or was cancelled
+	 * @throws IllegalArgumentException
+	 *             if the timeout belongs to another scheduler
+	 */
+	public boolean cancel(Timeout timeout) throws IllegalArgumentException {
+		checkOwner(timeout);
+		_lock.lock();
+		try {
+			if (timeout._state != Timeout.PENDING) {
+				return false;
+			}
+			unplace(timeout);
+			timeout._state = Timeout.CANCELLED;
+			_pending--;
+			return true;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of tasks scheduled that have neither fired nor been
+	 *         cancelled
+	 */
+	public int pending() {
+		_lock.lock();
+		try {
+			return _pending;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Fires every task that is due by now onto the executor, walking the
+	 * wheel one tick at a time up to the current tick. Called by the driver
+	 * thread, or directly when the caller drives time itself. A task the
+	 * executor rejects because it was shut down is dropped. If the executor
+	 * fails in any other way the remaining tasks are still handed to it, and
+	 * the first failure is thrown afterwards.
+	 *
+	 * @return the number of tasks fired
+	 */
+	public int advance() {
+		List<Timeout> due = new ArrayList<Timeout>();
+		_lock.lock();
+		try {
+			long now = (_clock.getAsLong() - _start) / _tickNanos;
+			while (_tick < now) {
+				_tick++;
+				tick(due);
+			}
+			_pending -= due.size();
+		} finally {
+			_lock.unlock();
+		}
+
+		// tasks are handed to the executor outside the lock, so a task may
+		// schedule or cancel others right away
+		RuntimeException failure = null;
+		for (Timeout timeout : due) {
+			try {
+				_executor.execute(timeout._task);
+			} catch (RejectedExecutionException e) {
+				// the executor was shut down, the task is dropped
+			} catch (RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return due.size();
+	}
+
+	/**
+	 * Starts a daemon thread that calls advance() at every tick until the
+	 * scheduler is closed. A failure of the executor goes to the thread's
+	 * default uncaught exception handler; see the one argument version.
+	 *
+	 * @throws IllegalStateException
+	 *             if the driver already runs or the scheduler is closed
+	 */
+	public void start() throws IllegalStateException {
+		start(null);
+	}
+
+	/**
+	 * Starts a daemon thread that calls advance() at every tick until the
+	 * scheduler is closed. A failure of advance(), which is a failure of the
+	 * executor, is passed to the given handler and the thread goes on with
+	 * the next tick.
+	 *
+	 * @param handler
+	 *            receives the failures of the driver thread, or null for the
+	 *            default uncaught exception handler
+	 * @throws IllegalStateException
+	 *             if the driver already runs or the scheduler is closed
+	 */
+	public void start(Thread.UncaughtExceptionHandler handler) throws IllegalStateException {
+		_lock.lock();
+		try {
+			if (_closed) {
+				throw new IllegalStateException("scheduler is closed");
+			}
+			if (_driver != null) {
+				throw new IllegalStateException("already started");
+			}
+			_driver = new Thread(new Runnable() {
+				public void run() {
+					drive();
+				}
+			}, "heap-timer");
+			_driver.setDaemon(true);
+			if (handler != null) {
+				_driver.setUncaughtExceptionHandler(handler);
+			}
+			_driver.start();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops the driver thread, waiting for it to finish its last tick. Tasks
+	 * that are still pending never fire, and scheduling new ones fails.
+	 */
+	public void close() {
+		Thread driver;
+		_lock.lock();
+		try {
+			_closed = true;
+			driver = _driver;
+		} finally {
+			_lock.unlock();
+		}
+		if (driver != null && driver != Thread.currentThread()) {
+			LockSupport.unpark(driver);
+			boolean interrupted = false;
+			while (driver.isAlive()) {
+				try {
+					driver.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void drive() {
+		while (!_closed) {
+			long wait;
+			_lock.lock();
+			try {
+				wait = _start + (_tick + 1) * _tickNanos - _clock.getAsLong();
+			} finally {
+				_lock.unlock();
+			}
+			if (wait > 0) {
+				LockSupport.parkNanos(this, wait);
+			} else {
+				try {
+					advance();
+				} catch (RuntimeException e) {
+					// report the failure without stopping the clock
+					Thread thread = Thread.currentThread();
+					thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+				}
+			}
+		}
+	}
+
+	private void checkOwner(Timeout timeout) throws IllegalArgumentException {
+		if (timeout == null || timeout._scheduler != this) {
+			throw new IllegalArgumentException("timeout not from this scheduler");
+		}
+	}
+
+	/**
+	 * @return the tick at or after the given delay from now, and at least the
+	 *         next tick to be fired
+	 */
+	private long deadline(long delay, TimeUnit unit) {
+		long elapsed = _clock.getAsLong() - _start;
+		// toNanos() saturates at Long.MAX_VALUE, so the sum must saturate too
+		// rather than wrap around to a deadline in the past
+		long nanos = Math.max(0, unit.toNanos(delay));
+		long target = nanos > Long.MAX_VALUE - elapsed ? Long.MAX_VALUE : elapsed + nanos;
+		long tick = target / _tickNanos + (target % _tickNanos == 0 ? 0 : 1);
+		return Math.max(tick, _tick + 1);
+	}
+
+	/**
+	 * Fires the slot of the lowest level that is due at the current tick,
+	 * after emptying into the lower levels every higher level slot whose turn
+	 * has come and moving overflow deadlines that are now in range into the
+	 * wheel.
+	 */
+	private void tick(List<Timeout> due) {
+		while (!_overflow.isEmpty() && _overflow.min().getKey() - _tick < WHEEL_SPAN) {
+			Timeout timeout = _overflow.removeMin().getValue();
+			timeout._entry = null;
+			place(timeout);
+		}
+		for (int level = LEVELS - 1; level > 0; level--) {
+			if ((_tick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+				int slot = slot(_tick, level);
+				Timeout timeout = _wheel[level][slot];
+				_wheel[level][slot] = null;
+				while (timeout != null) {
+					Timeout next = timeout._next;
+					place(timeout);
+					timeout = next;
+				}
+			}
+		}
+		int slot = slot(_tick, 0);
+		Timeout timeout = _wheel[0][slot];
+		_wheel[0][slot] = null;
+		while (timeout != null) {
+			timeout._state = Timeout.FIRED;
+			timeout._prev = null;
+			due.add(timeout);
+			Timeout next = timeout._next;
+			timeout._next = null;
+			timeout = next;
+		}
+	}
+
+	/**
+	 * Puts a timeout into the lowest level whose span covers its deadline,
+	 * at the slot that comes around at that deadline, or into the overflow
+	 * heap.
+	 */
+	private void place(Timeout timeout) {
+		long ticks = timeout._deadline - _tick;
+		if (ticks >= WHEEL_SPAN) {
+			timeout._level = -1;
+			timeout._entry = _overflow.insert(timeout._deadline, timeout);
+			return;
+		}
+		int level = 0;
+		while (ticks >= 1L << (SLOT_BITS * (level + 1))) {
+			level++;
+		}
+		int slot = slot(timeout._deadline, level);
+		timeout._level = level;
+		timeout._slot = slot;
+		timeout._prev = null;
+		timeout._next = _wheel[level][slot];
+		if (timeout._next != null) {
+			timeout._next._prev = timeout;
+		}
+		_wheel[level][slot] = timeout;
+	}
+
+	/**
+	 * Takes a pending timeout out of its slot or out of the overflow heap.
+	 */
+	private void unplace(Timeout timeout) {
+		if (timeout._level < 0) {
+			_overflow.remove(timeout._entry);
+			timeout._entry = null;
+			return;
+		}
+		if (timeout._prev == null) {
+			_wheel[timeout._level][timeout._slot] = timeout._next;
+		} else {
+			timeout._prev._next = timeout._next;
+		}
+		if (timeout._next != null) {
+			timeout._next._prev = timeout._prev;
+		}
+		timeout._prev = null;
+		timeout._next = null;
+	}
+
+	private static int slot(long tick, int level) {
+		return (int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+	}
+
+	/**
+	 * A handle on a scheduled task. A timeout is pending until its task fires
+	 * or it is cancelled.
+	 */
+	public static class Timeout {
+
+		private static final int PENDING = 0;
+		private static final int FIRED = 1;
+		private static final int CANCELLED = 2;
+
+		private final TimerScheduler _scheduler;
+		private final Runnable _task;
+		private long _deadline;
+		private int _state;
+		// the wheel level and slot, or a level of -1 and the overflow entry
+		private int _level;
+		private int _slot;
+		private Timeout _prev;
+		private Timeout _next;
+		private Entry<Long, Timeout> _entry;
+
+		private Timeout(TimerScheduler scheduler, Runnable task) {
+			_scheduler = scheduler;
+			_task = task;
+		}
+
+		/**
+		 * @return the task this timeout runs
+		 */
+		public Runnable getTask() {
+			return _task;
+		}
+
+		/**
+		 * Cancels the task if it is still pending.
+		 *
+		 * @return false if the task already fired or was cancelled
+		 */
+		public boolean cancel() {
+			return _scheduler.cancel(this);
+		}
+
+		/**
+		 * @return whether the task was handed to the executor
+		 */
+		public boolean isFired() {
+			_scheduler._lock.lock();
+			try {
+				return _state == FIRED;
+			} finally {
+				_scheduler._lock.unlock();
+			}
+		}
+
+		/**
+		 * @return whether the task was cancelled before it fired
+		 */
+		public boolean isCancelled() {
+			_scheduler._lock.lock();
+			try {
+				return _state == CANCELLED;
+			} finally {
+				_scheduler._lock.unlock();
+			}
+		}
+	}
+}
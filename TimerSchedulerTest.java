@@ -0,0 +1,264 @@
+package heap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Tests the functionality of TimerScheduler on a clock the tests move along
+ * themselves, including deadlines that cascade down the wheel and ones that
+ * start out in the overflow heap.
+ */
+public class TimerSchedulerTest {
+
+	private final AtomicLong _clock = new AtomicLong();
+	private final List<String> _fired = new ArrayList<String>();
+	// runs tasks on the calling thread
+	private final Executor _direct = new Executor() {
+		public void execute(Runnable task) {
+			task.run();
+		}
+	};
+
+	private TimerScheduler newScheduler() {
+		return new TimerScheduler(1, TimeUnit.MILLISECONDS, _direct, _clock::get);
+	}
+
+	private Runnable record(final String name) {
+		return new Runnable() {
+			public void run() {
+				_fired.add(name);
+			}
+		};
+	}
+
+	private void advanceTo(TimerScheduler scheduler, long millis) {
+		_clock.set(TimeUnit.MILLISECONDS.toNanos(millis));
+		scheduler.advance();
+	}
+
+	@Test
+	public void testFiresInDeadlineOrder() {
+		TimerScheduler scheduler = newScheduler();
+		scheduler.schedule(record("C"), 30, TimeUnit.MILLISECONDS);
+		scheduler.schedule(record("A"), 10, TimeUnit.MILLISECONDS);
+		scheduler.schedule(record("B"), 20, TimeUnit.MILLISECONDS);
+		assertThat(scheduler.pending(), is(3));
+
+		advanceTo(scheduler, 9);
+		assertTrue(_fired.isEmpty());
+		advanceTo(scheduler, 20);
+		assertThat(_fired, is(Arrays.asList("A", "B")));
+		advanceTo(scheduler, 100);
+		assertThat(_fired, is(Arrays.asList("A", "B", "C")));
+		assertThat(scheduler.pending(), is(0));
+	}
+
+	@Test
+	public void testNonPositiveDelayFiresOnNextTick() {
+		TimerScheduler scheduler = newScheduler();
+		TimerScheduler.Timeout timeout = scheduler.schedule(record("A"), -5, TimeUnit.MILLISECONDS);
+		assertThat(scheduler.advance(), is(0));
+		advanceTo(scheduler, 1);
+		assertThat(_fired, is(Arrays.asList("A")));
+		assertTrue(timeout.isFired());
+		assertFalse(timeout.cancel());
+	}
+
+	@Test
+	public void testCancel() {
+		TimerScheduler scheduler = newScheduler();
+		TimerScheduler.Timeout a = scheduler.schedule(record("A"), 5, TimeUnit.MILLISECONDS);
+		TimerScheduler.Timeout b = scheduler.schedule(record("B"), 5, TimeUnit.MILLISECONDS);
+		TimerScheduler.Timeout c = scheduler.schedule(record("C"), 5000, TimeUnit.MILLISECONDS);
+		assertTrue(a.cancel());
+		assertFalse(a.cancel());
+		assertTrue(scheduler.cancel(c));
+		assertTrue(a.isCancelled());
+		assertThat(scheduler.pending(), is(1));
+
+		advanceTo(scheduler, 10000);
+		assertThat(_fired, is(Arrays.asList("B")));
+		assertTrue(b.isFired());
+		assertFalse(c.isFired());
+	}
+
+	@Test
+	public void testReschedule() {
+		TimerScheduler scheduler = newScheduler();
+		TimerScheduler.Timeout a = scheduler.schedule(record("A"), 5, TimeUnit.MILLISECONDS);
+		scheduler.schedule(record("B"), 50, TimeUnit.MILLISECONDS);
+		assertTrue(scheduler.reschedule(a, 100, TimeUnit.MILLISECONDS));
+
+		advanceTo(scheduler, 60);
+		assertThat(_fired, is(Arrays.asList("B")));
+		advanceTo(scheduler, 100);
+		assertThat(_fired, is(Arrays.asList("B", "A")));
+		assertFalse(scheduler.reschedule(a, 1, TimeUnit.MILLISECONDS));
+	}
+
+	/*
+	 * Deadlines beyond the span of the wheel wait in the overflow heap and
+	 * still fire on their own tick, not a tick early or late.
+	 */
+	@Test
+	public void testOverflowDeadlines() {
+		TimerScheduler scheduler = newScheduler();
+		long far = (1L << 24) + 12345;
+		scheduler.schedule(record("far"), far, TimeUnit.MILLISECONDS);
+		scheduler.schedule(record("farther"), 3 * far, TimeUnit.MILLISECONDS);
+		scheduler.schedule(record("near"), 1, TimeUnit.MILLISECONDS);
+
+		advanceTo(scheduler, far - 1);
+		assertThat(_fired, is(Arrays.asList("near")));
+		advanceTo(scheduler, far);
+		assertThat(_fired, is(Arrays.asList("near", "far")));
+		advanceTo(scheduler, 3 * far);
+		assertThat(_fired, is(Arrays.asList("near", "far", "farther")));
+	}
+
+	/*
+	 * A delay so long that it saturates in nanoseconds stays pending instead
+	 * of wrapping around to a deadline in the past.
+	 */
+	@Test
+	public void testHugeDelayDoesNotFire() {
+		TimerScheduler scheduler = newScheduler();
+		advanceTo(scheduler, 5);
+		scheduler.schedule(record("never"), Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		scheduler.schedule(record("days"), Long.MAX_VALUE / 2, TimeUnit.NANOSECONDS);
+		advanceTo(scheduler, 10000);
+		assertTrue(_fired.isEmpty());
+		assertThat(scheduler.pending(), is(2));
+	}
+
+	/*
+	 * Delays on both sides of every level boundary of the wheel, and of its
+	 * span, each fire on their own tick after cascading down the levels.
+	 */
+	@Test
+	public void testLevelBoundariesFireOnTime() {
+		TimerScheduler scheduler = newScheduler();
+		List<Long> delays = new ArrayList<Long>();
+		delays.add(1L);
+		for (long span = 64; span <= 1L << 24; span *= 64) {
+			delays.add(span - 1);
+			delays.add(span);
+			delays.add(span + 1);
+		}
+		delays.add(64L * 64 * 64 + 64 * 64 + 64 + 1);
+		Collections.sort(delays);
+		for (long delay : delays) {
+			scheduler.schedule(record(Long.toString(delay)), delay, TimeUnit.MILLISECONDS);
+		}
+
+		List<String> expected = new ArrayList<String>();
+		for (long delay : delays) {
+			advanceTo(scheduler, delay - 1);
+			assertThat(_fired, is(expected));
+			advanceTo(scheduler, delay);
+			expected.add(Long.toString(delay));
+			assertThat(_fired, is(expected));
+		}
+		assertThat(scheduler.pending(), is(0));
+	}
+
+	@Test
+	public void testDriverFiresOnExecutor() throws InterruptedException {
+		TimerScheduler scheduler = new TimerScheduler(1, TimeUnit.MILLISECONDS, _direct);
+		final CountDownLatch latch = new CountDownLatch(2);
+		Runnable task = new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		};
+		scheduler.start();
+		scheduler.schedule(task, 5, TimeUnit.MILLISECONDS);
+		scheduler.schedule(task, 20, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		scheduler.close();
+	}
+
+	/*
+	 * An executor that fails for one task still gets every other due task,
+	 * and the failure is thrown once they have all been handed over.
+	 */
+	@Test
+	public void testFailingExecutorDropsNoOtherTasks() {
+		TimerScheduler scheduler = new TimerScheduler(1, TimeUnit.MILLISECONDS, new Executor() {
+			public void execute(Runnable task) {
+				task.run();
+				if (_fired.size() == 1) {
+					throw new IllegalStateException("executor failed");
+				}
+			}
+		}, _clock::get);
+		scheduler.schedule(record("A"), 1, TimeUnit.MILLISECONDS);
+		scheduler.schedule(record("B"), 1, TimeUnit.MILLISECONDS);
+		scheduler.schedule(record("C"), 1, TimeUnit.MILLISECONDS);
+		try {
+			advanceTo(scheduler, 1);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertThat(_fired.size(), is(3));
+		assertThat(scheduler.pending(), is(0));
+	}
+
+	/*
+	 * The driver thread keeps running after the executor fails, and passes
+	 * each failure to the handler it was started with.
+	 */
+	@Test
+	public void testDriverSurvivesFailingExecutor() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(2);
+		final CountDownLatch failures = new CountDownLatch(2);
+		TimerScheduler scheduler = new TimerScheduler(1, TimeUnit.MILLISECONDS, new Executor() {
+			public void execute(Runnable task) {
+				task.run();
+				throw new IllegalStateException("executor failed");
+			}
+		});
+		Runnable task = new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		};
+		scheduler.start(new Thread.UncaughtExceptionHandler() {
+			public void uncaughtException(Thread thread, Throwable failure) {
+				if (failure instanceof IllegalStateException) {
+					failures.countDown();
+				}
+			}
+		});
+		scheduler.schedule(task, 1, TimeUnit.MILLISECONDS);
+		scheduler.schedule(task, 30, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(failures.await(5, TimeUnit.SECONDS));
+		scheduler.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testScheduleAfterClose() {
+		TimerScheduler scheduler = newScheduler();
+		scheduler.close();
+		scheduler.schedule(record("A"), 1, TimeUnit.MILLISECONDS);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCancelForeignTimeout() {
+		TimerScheduler.Timeout timeout = newScheduler().schedule(record("A"), 1, TimeUnit.MILLISECONDS);
+		newScheduler().cancel(timeout);
+	}
+}
@@ -0,0 +1,44 @@
+package heap.bench;
+
+import java.util.Random;
+
+/**
+ * The key orders the benchmarks load heaps with. All keys stay within 1..99,
+ * the range MyHeap accepts.
+ */
+public enum KeyDistribution {
+
+	/** keys drawn uniformly from 1..99 */
+	UNIFORM,
+	/** keys that never decrease, so every insert stays at the bottom */
+	SORTED,
+	/** keys that never increase, so every insert sorts up towards the root */
+	REVERSE_SORTED,
+	/** only four distinct keys, lots of ties */
+	FEW_DISTINCT;
+
+	/**
+	 * Returns the keys for a heap of the given size.
+	 */
+	public int[] keys(int size, long seed) {
+		Random random = new Random(seed);
+		int[] keys = new int[size];
+		for (int i = 0; i < size; i++) {
+			switch (this) {
+			case UNIFORM:
+				keys[i] = 1 + random.nextInt(99);
+				break;
+			case SORTED:
+				keys[i] = 1 + (int) ((long) i * 99 / size);
+				break;
+			case REVERSE_SORTED:
+				keys[i] = 99 - (int) ((long) i * 99 / size);
+				break;
+			default:
+				keys[i] = 10 * (1 + random.nextInt(4));
+				break;
+			}
+		}
+		return keys;
+	}
+}
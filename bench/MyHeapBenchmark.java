@@ -0,0 +1,175 @@
+package heap.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import heap.IntegerComparator;
+import heap.MyArrayHeapTree;
+import heap.MyHeap;
+import heap.MyHeapEntry;
+import net.datastructures.Entry;
+
+/**
+ * Benchmarks the operations of MyHeap on a heap that holds "size" entries
+ * loaded with keys from the given distribution, on both the linked and the
+ * array tree. Every benchmark leaves the heap at the same size, so each
+ * iteration measures the same steady state:
+ *
+ * - hold: insert() followed by removeMin(), the classic priority queue mix
+ * - insert / removeMin: a batch of inserts or of removeMin() calls, undone
+ *   outside the measurement after every batch
+ * - decreaseKey / increaseKey: replaceKey() on a random entry, moving its key
+ *   down or up by a random amount and then back to the key it was loaded
+ *   with, so the keys never drift and every call sorts as far as the first;
+ *   the time reported is that of both moves
+ * - removeAndReinsert: remove() of a random entry and insert() of its key
+ *
+ * Run main() to include the GC profiler, which reports the allocation rate of
+ * every benchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MyHeapBenchmark {
+
+	@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+	public int size;
+
+	@Param({ "UNIFORM", "SORTED", "REVERSE_SORTED", "FEW_DISTINCT" })
+	public KeyDistribution distribution;
+
+	@Param({ "LINKED", "ARRAY" })
+	public String tree;
+
+	// operations per invocation of the insert and removeMin benchmarks
+	private static final int BATCH = 100;
+
+	private MyHeap<Integer, Integer> _heap;
+	private Entry<Integer, Integer>[] _handles;
+	private int[] _keys;
+	private Random _random;
+
+	@Setup(Level.Iteration)
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void load() {
+		_keys = distribution.keys(size, 160);
+		_heap = tree.equals("ARRAY")
+				? new MyHeap<Integer, Integer>(new IntegerComparator(),
+						new MyArrayHeapTree<MyHeapEntry<Integer, Integer>>(size))
+				: new MyHeap<Integer, Integer>(new IntegerComparator());
+		_handles = (Entry<Integer, Integer>[]) new Entry[size];
+		for (int i = 0; i < size; i++) {
+			_handles[i] = _heap.insert(_keys[i], i);
+		}
+		_random = new Random(16);
+	}
+
+	@Benchmark
+	public Entry<Integer, Integer> hold() {
+		_heap.insert(_keys[_random.nextInt(size)], 0);
+		return _heap.removeMin();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void insert(Batch batch) {
+		for (int i = 0; i < BATCH; i++) {
+			batch._entries.add(_heap.insert(_keys[_random.nextInt(size)], i));
+		}
+		batch._heap = _heap;
+		batch._inserted = true;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void removeMin(Batch batch) {
+		for (int i = 0; i < BATCH; i++) {
+			batch._entries.add(_heap.removeMin());
+		}
+		batch._heap = _heap;
+		batch._inserted = false;
+	}
+
+	@Benchmark
+	public Integer decreaseKey() {
+		int index = _random.nextInt(size);
+		int key = _keys[index];
+		_heap.replaceKey(_handles[index], key > 1 ? key - 1 - _random.nextInt(key - 1) : key);
+		return _heap.replaceKey(_handles[index], key);
+	}
+
+	@Benchmark
+	public Integer increaseKey() {
+		int index = _random.nextInt(size);
+		int key = _keys[index];
+		_heap.replaceKey(_handles[index], key < 99 ? key + 1 + _random.nextInt(99 - key) : key);
+		return _heap.replaceKey(_handles[index], key);
+	}
+
+	@Benchmark
+	public void removeAndReinsert(Blackhole blackhole) {
+		int index = _random.nextInt(size);
+		Entry<Integer, Integer> removed = _heap.remove(_handles[index]);
+		_handles[index] = _heap.insert(removed.getKey(), index);
+		blackhole.consume(removed);
+	}
+
+	/*
+	 * The entries the last insert or removeMin batch added or took out, put
+	 * back after every invocation so the heap stays at its size.
+	 */
+	@State(Scope.Thread)
+	public static class Batch {
+
+		private final List<Entry<Integer, Integer>> _entries = new ArrayList<Entry<Integer, Integer>>(BATCH);
+		// the heap the batch ran on, as JMH hands fixtures their own instance
+		// of the benchmark state
+		private MyHeap<Integer, Integer> _heap;
+		private boolean _inserted;
+
+		@TearDown(Level.Invocation)
+		public void undo() {
+			for (Entry<Integer, Integer> entry : _entries) {
+				if (_inserted) {
+					_heap.remove(entry);
+				} else {
+					_heap.insert(entry.getKey(), entry.getValue());
+				}
+			}
+			_entries.clear();
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(MyHeapBenchmark.class.getSimpleName())
+				.include(MyLinkedHeapTreeBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
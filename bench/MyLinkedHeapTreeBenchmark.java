@@ -0,0 +1,68 @@
+package heap.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import heap.MyLinkedHeapTree;
+
+/**
+ * Benchmarks add() and remove() of MyLinkedHeapTree on a tree that holds
+ * "size" nodes. addRemove adds a last node and removes it again, so the tree
+ * stays the same size; add and remove on their own change the shape of the
+ * tree and are measured by filling and emptying it in one shot.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MyLinkedHeapTreeBenchmark {
+
+	@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+	public int size;
+
+	private MyLinkedHeapTree<Integer> _tree;
+
+	@Setup(Level.Iteration)
+	public void load() {
+		_tree = new MyLinkedHeapTree<Integer>();
+		for (int i = 0; i < size; i++) {
+			_tree.add(i);
+		}
+	}
+
+	@Benchmark
+	public Integer addRemove() {
+		_tree.add(size);
+		return _tree.remove();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 2)
+	@Measurement(iterations = 5)
+	public MyLinkedHeapTree<Integer> fillAndEmpty() {
+		MyLinkedHeapTree<Integer> tree = new MyLinkedHeapTree<Integer>();
+		for (int i = 0; i < size; i++) {
+			tree.add(i);
+		}
+		while (!tree.isEmpty()) {
+			tree.remove();
+		}
+		return tree;
+	}
+}